@@ -0,0 +1,335 @@
+package aoc;
+
+import java.util.Arrays;
+
+
+
+/**
+ * Two dimensional array of booleans. Internally each row is stored as bits in long words (bit x of a row is bit x % 64
+ * of word x / 64), so bulk operations work on 64 cells at once.
+ */
+public class BitGrid {
+	private static final int WORD_BITS = Long.SIZE;
+
+	private final int width;
+	private final int height;
+	private final int wordsPerRow;
+	private final long lastWordMask;
+	private final long[] words;
+	private final long[] rowBuffer;
+	private final long[] columnBuffer; // a column packed into bits (bit y = row y), rotated like a row
+	private final long[] columnRotated;
+
+	/**
+	 * Constructor, all elements are false
+	 * 
+	 * @param width
+	 *          width of the two dimensional array
+	 * @param height
+	 *          height of the two dimensional array
+	 */
+	public BitGrid(int width, int height) {
+		if (width < 1 || height < 1) { throw new IllegalArgumentException("size has to be positive"); }
+
+		this.width = width;
+		this.height = height;
+		wordsPerRow = (width + WORD_BITS - 1) / WORD_BITS;
+		lastWordMask = -1L >>> (wordsPerRow * WORD_BITS - width);
+		words = new long[Math.multiplyExact(wordsPerRow, height)];
+		rowBuffer = new long[wordsPerRow];
+		columnBuffer = new long[(height + WORD_BITS - 1) / WORD_BITS];
+		columnRotated = new long[columnBuffer.length];
+	}
+
+	/**
+	 * Constructor, all elements are false
+	 * 
+	 * @param size
+	 *          size of the array (x = width, y = height).
+	 */
+	public BitGrid(Position size) {
+		this(size.x, size.y);
+	}
+
+	private int wordIndex(int x, int y) {
+		return y * wordsPerRow + x / WORD_BITS;
+	}
+
+	private void validate(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) { throw new IndexOutOfBoundsException(x + "|" + y); }
+	}
+
+	/**
+	 * returns the element at position (x,y) of the array.
+	 * 
+	 * @param x
+	 *          x position
+	 * @param y
+	 *          y position
+	 * @return element of array
+	 */
+	public boolean get(int x, int y) {
+		validate(x, y);
+		return (words[wordIndex(x, y)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * returns the element at a specified position of the array.
+	 * 
+	 * @param pos
+	 *          at position
+	 * @return element of array
+	 */
+	public boolean get(Position pos) {
+		return get(pos.x, pos.y);
+	}
+
+	/**
+	 * sets the element at position (x,y) of the array.
+	 * 
+	 * @param x
+	 *          x position
+	 * @param y
+	 *          y position
+	 * @param element
+	 *          new element
+	 * @return old element
+	 */
+	public boolean set(int x, int y, boolean element) {
+		var old = get(x, y);
+		if (element) {
+			words[wordIndex(x, y)] |= 1L << x;
+		} else {
+			words[wordIndex(x, y)] &= ~(1L << x);
+		}
+		return old;
+	}
+
+	/**
+	 * sets the element at position (x,y) of the array.
+	 * 
+	 * @param pos
+	 *          at position
+	 * @param element
+	 *          new element
+	 * @return old element
+	 */
+	public boolean set(Position pos, boolean element) {
+		return set(pos.x, pos.y, element);
+	}
+
+	/**
+	 * swaps the elements of the array
+	 * 
+	 * @param a
+	 *          first position
+	 * @param b
+	 *          second position
+	 */
+	public void swap(Position a, Position b) {
+		set(b, set(a, get(b)));
+	}
+
+	/**
+	 * size of the array
+	 * 
+	 * @return size (x=width, y=height)
+	 */
+	public Position size() {
+		return new Position(width, height);
+	}
+
+	/**
+	 * Sets all elements of a rectangle. Each row is filled with masked word operations.
+	 * 
+	 * @param x
+	 *          left column
+	 * @param y
+	 *          top row
+	 * @param rectWidth
+	 *          width of the rectangle
+	 * @param rectHeight
+	 *          height of the rectangle
+	 * @param value
+	 *          new value of the elements
+	 */
+	public void fillRectangle(int x, int y, int rectWidth, int rectHeight, boolean value) {
+		if (rectWidth <= 0 || rectHeight <= 0) { return; }
+		validate(x, y);
+		validate(x + rectWidth - 1, y + rectHeight - 1);
+
+		final int firstWord = x / WORD_BITS;
+		final int lastWord = (x + rectWidth - 1) / WORD_BITS;
+		final long firstMask = -1L << x;
+		final long lastMask = -1L >>> (WORD_BITS - 1 - (x + rectWidth - 1) % WORD_BITS);
+
+		for (int row = y; row < y + rectHeight; ++row) {
+			var rowStart = row * wordsPerRow;
+			for (int i = firstWord; i <= lastWord; ++i) {
+				long mask = -1L;
+				if (i == firstWord) { mask &= firstMask; }
+				if (i == lastWord) { mask &= lastMask; }
+
+				if (value) {
+					words[rowStart + i] |= mask;
+				} else {
+					words[rowStart + i] &= ~mask;
+				}
+			}
+		}
+	}
+
+	/**
+	 * population count
+	 * 
+	 * @return number of elements, that are true
+	 */
+	public long count() {
+		long result = 0;
+		for (var i : words) {
+			result += Long.bitCount(i);
+		}
+		return result;
+	}
+
+	// dst = src moved by distance bits towards higher indices
+	private static void shiftUp(long[] src, int srcStart, long[] dst, int words, int distance) {
+		final int wordShift = distance / WORD_BITS;
+		final int bitShift = distance % WORD_BITS;
+
+		for (int i = words - 1; i >= 0; --i) {
+			int from = i - wordShift;
+			long value = (from >= 0) ? src[srcStart + from] << bitShift : 0;
+			if (bitShift != 0 && from > 0) { value |= src[srcStart + from - 1] >>> (WORD_BITS - bitShift); }
+			dst[i] = value;
+		}
+	}
+
+	// dst |= src moved by distance bits towards lower indices
+	private static void orShiftDown(long[] src, int srcStart, long[] dst, int words, int distance) {
+		final int wordShift = distance / WORD_BITS;
+		final int bitShift = distance % WORD_BITS;
+
+		for (int i = 0; i < words; ++i) {
+			int from = i + wordShift;
+			long value = (from < words) ? src[srcStart + from] >>> bitShift : 0;
+			if (bitShift != 0 && from + 1 < words) { value |= src[srcStart + from + 1] << (WORD_BITS - bitShift); }
+			dst[i] |= value;
+		}
+	}
+
+	/**
+	 * Rotates a row to the right (higher x), elements falling off the end appear at the beginning. Works on whole
+	 * words: (row << value) | (row >>> (width - value)).
+	 * 
+	 * @param row
+	 *          row to be rotated
+	 * @param value
+	 *          number of cells, negative values rotate to the left
+	 */
+	public void rotateRow(int row, int value) {
+		validate(0, row);
+		final int distance = Math.floorMod(value, width);
+		if (distance == 0) { return; }
+
+		final int rowStart = row * wordsPerRow;
+		shiftUp(words, rowStart, rowBuffer, wordsPerRow, distance);
+		orShiftDown(words, rowStart, rowBuffer, wordsPerRow, width - distance);
+		rowBuffer[wordsPerRow - 1] &= lastWordMask;
+		System.arraycopy(rowBuffer, 0, words, rowStart, wordsPerRow);
+	}
+
+	/**
+	 * Rotates a column downwards (higher y), elements falling off the end appear at the top. The column is packed into
+	 * bits, rotated with the word operations of {@link #rotateRow(int, int)} and written back. As its bits lie in
+	 * different words, one word per row is still read and written: many rotations of columns are faster on the
+	 * transposed array (see {@link #transpose()}).
+	 * 
+	 * @param column
+	 *          column to be rotated
+	 * @param value
+	 *          number of cells, negative values rotate upwards
+	 */
+	public void rotateColumn(int column, int value) {
+		validate(column, 0);
+		final int distance = Math.floorMod(value, height);
+		if (distance == 0) { return; }
+
+		final int wordOffset = column / WORD_BITS;
+		final long bit = 1L << column;
+		Arrays.fill(columnBuffer, 0);
+		for (int i = 0; i < height; ++i) {
+			columnBuffer[i / WORD_BITS] |= ((words[i * wordsPerRow + wordOffset] >>> column) & 1L) << i;
+		}
+
+		shiftUp(columnBuffer, 0, columnRotated, columnBuffer.length, distance);
+		orShiftDown(columnBuffer, 0, columnRotated, columnBuffer.length, height - distance);
+
+		for (int i = 0; i < height; ++i) {
+			var index = i * wordsPerRow + wordOffset;
+			words[index] = (words[index] & ~bit) | (((columnRotated[i / WORD_BITS] >>> i) & 1L) << column);
+		}
+	}
+
+	// transposes a 64x64 bit matrix in place by swapping ever smaller sub blocks (Hacker's Delight, 7-3)
+	private static void transposeBlock(long[] block) {
+		long mask = 0x00000000FFFFFFFFL;
+		for (int j = WORD_BITS / 2; j != 0; j >>>= 1, mask ^= mask << j) {
+			for (int k = 0; k < WORD_BITS; k = ((k | j) + 1) & ~j) {
+				long t = ((block[k] >>> j) ^ block[k | j]) & mask;
+				block[k] ^= t << j;
+				block[k | j] ^= t;
+			}
+		}
+	}
+
+	/**
+	 * Creates the transposed array: element (x,y) of this array is element (y,x) of the result. Works on blocks of 64x64
+	 * elements, so rows of the result are whole words again.
+	 * 
+	 * @return new array with width and height swapped
+	 */
+	public BitGrid transpose() {
+		var result = new BitGrid(height, width);
+		var block = new long[WORD_BITS];
+
+		for (int rowBlock = 0; rowBlock < height; rowBlock += WORD_BITS) {
+			for (int word = 0; word < wordsPerRow; ++word) {
+				for (int i = 0; i < WORD_BITS; ++i) {
+					var row = rowBlock + i;
+					block[i] = (row < height) ? words[row * wordsPerRow + word] : 0;
+				}
+				transposeBlock(block);
+				for (int i = 0; i < WORD_BITS; ++i) {
+					var row = word * WORD_BITS + i;
+					if (row >= width) { break; }
+					result.words[row * result.wordsPerRow + rowBlock / WORD_BITS] = block[i];
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * sets all elements to false
+	 */
+	public void clear() {
+		Arrays.fill(words, 0);
+	}
+
+	@Override
+	public String toString() {
+		var result = new StringBuilder("BitGrid " + width + "x" + height + ":\n");
+
+		for (int i = 0; i < height; ++i) {
+			for (int j = 0; j < width; ++j) {
+				result.append(get(j, i) ? '#' : '.');
+			}
+			result.append('\n');
+		}
+		result.deleteCharAt(result.length() - 1);
+
+		return result.toString();
+	}
+}
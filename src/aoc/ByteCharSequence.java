@@ -0,0 +1,87 @@
+package aoc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+
+/**
+ * Read only view of a part of a ByteBuffer as characters (one byte is one character, like ISO-8859-1). The bytes are
+ * not copied, only toString() creates a new String.
+ */
+public class ByteCharSequence implements CharSequence {
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final int length;
+
+	/**
+	 * constructor
+	 *
+	 * @param buffer
+	 *          contains the characters
+	 * @param offset
+	 *          absolute position of the first character in buffer
+	 * @param length
+	 *          number of characters
+	 */
+	public ByteCharSequence(ByteBuffer buffer, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length);
+		}
+
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 * @return the underlying buffer
+	 */
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	/**
+	 * @return absolute position of the first character in the buffer
+	 */
+	public int offset() {
+		return offset;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * returns the byte at an index
+	 *
+	 * @param index
+	 *          index of the byte
+	 * @return byte at index
+	 */
+	public byte byteAt(int index) {
+		if (index < 0 || index >= length) { throw new IndexOutOfBoundsException(index); }
+		return buffer.get(offset + index);
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char) (byteAt(index) & 0xFF);
+	}
+
+	@Override
+	public ByteCharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start: " + start + ", end: " + end);
+		}
+		return new ByteCharSequence(buffer, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		var bytes = new byte[length];
+		buffer.get(offset, bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -3,13 +3,18 @@ package aoc;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
 
 
 
 /**
  * Creates a statistic about the characters of a string (how often a letter is used). The list of used characters is
  * then sorted from most used to least used.
+ * 
+ * The characters are counted in a single pass: characters below 256 in an int array, all others in an open addressing
+ * hash map of primitives. Characters can be added at any time and statistics can be merged. The sorted list of
+ * {@link CharData} is only created if it is asked for, the first and last elements are selected without sorting.
  */
 public class CharStatistic {
 	/**
@@ -28,8 +33,22 @@ public class CharStatistic {
 		}
 	}
 
-	private final String string;
-	private List<CharData> statistics;
+	private static final int DENSE_SIZE = 256;
+	private static final int INITIAL_SPARSE_SIZE = 16;
+	private static final int SELECTION_LIMIT = 8; // up to this index a selection is faster than sorting
+
+	private final int[] dense = new int[DENSE_SIZE];
+	private char[] sparseKeys = new char[0]; // 0 marks an empty slot, it is never a key (0 < DENSE_SIZE)
+	private int[] sparseCounts = new int[0];
+	private int sparseSize = 0;
+
+	private List<CharData> statistics = null;
+
+	/**
+	 * constructor of an empty statistic, the characters can be added later
+	 */
+	public CharStatistic() {
+	}
 
 	/**
 	 * constructor
@@ -37,20 +56,184 @@ public class CharStatistic {
 	 * @param str
 	 *          String to be analysed
 	 */
-	public CharStatistic(String str) {
-		string = str;
-		statistics = new ArrayList<>(string.length());
-		countLetters();
-		statistics.sort(CharData::compareTo);
-	}
-
-	private void countLetters() {
-		String uniqueChrs = string.chars().distinct().mapToObj(c -> String.valueOf((char) c)).collect(Collectors.joining());
-		for (int i = 0; i < uniqueChrs.length(); ++i) {
-			var chr = uniqueChrs.charAt(i);
-			var count = string.chars().filter(c -> chr == c).count();
-			statistics.add(new CharData(chr, count));
+	public CharStatistic(CharSequence str) {
+		addAll(str);
+	}
+
+	private void add(char chr, int count) {
+		if (chr < DENSE_SIZE) {
+			dense[chr] = Math.addExact(dense[chr], count);
+		} else {
+			var slot = sparseSlot(chr); // may grow the arrays
+			sparseCounts[slot] = Math.addExact(sparseCounts[slot], count);
+		}
+	}
+
+	/**
+	 * counts a character
+	 * 
+	 * @param chr
+	 *          character
+	 * @return this
+	 */
+	public CharStatistic add(char chr) {
+		add(chr, 1);
+		statistics = null;
+		return this;
+	}
+
+	/**
+	 * counts all characters of a string
+	 * 
+	 * @param str
+	 *          characters
+	 * @return this
+	 */
+	public CharStatistic addAll(CharSequence str) {
+		for (int i = 0; i < str.length(); ++i) {
+			add(str.charAt(i), 1);
 		}
+		statistics = null;
+		return this;
+	}
+
+	/**
+	 * adds the counts of another statistic, e.g. to combine partial statistics of a parallel stream
+	 * 
+	 * @param other
+	 *          statistic to be added (it is not changed)
+	 * @return this
+	 */
+	public CharStatistic merge(CharStatistic other) {
+		for (int i = 0; i < DENSE_SIZE; ++i) {
+			dense[i] = Math.addExact(dense[i], other.dense[i]);
+		}
+		for (int i = 0; i < other.sparseKeys.length; ++i) {
+			if (other.sparseKeys[i] != 0 && other.sparseCounts[i] != 0) { add(other.sparseKeys[i], other.sparseCounts[i]); }
+		}
+		statistics = null;
+		return this;
+	}
+
+	// slot of a character in the sparse map, it is inserted if missing
+	private int sparseSlot(char chr) {
+		if (2 * (sparseSize + 1) > sparseKeys.length) { growSparse(); }
+
+		final int mask = sparseKeys.length - 1;
+		int slot = (chr * 0x9E37) & mask;
+		while (sparseKeys[slot] != chr) {
+			if (sparseKeys[slot] == 0) {
+				sparseKeys[slot] = chr;
+				++sparseSize;
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void growSparse() {
+		var oldKeys = sparseKeys;
+		var oldCounts = sparseCounts;
+		sparseKeys = new char[Math.max(INITIAL_SPARSE_SIZE, 2 * oldKeys.length)];
+		sparseCounts = new int[sparseKeys.length];
+		sparseSize = 0;
+
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] != 0) {
+				var slot = sparseSlot(oldKeys[i]);
+				sparseCounts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	/**
+	 * returns how often a character was used
+	 * 
+	 * @param chr
+	 *          character
+	 * @return number used
+	 */
+	public int count(char chr) {
+		if (chr < DENSE_SIZE) { return dense[chr]; }
+		if (sparseKeys.length == 0) { return 0; }
+
+		final int mask = sparseKeys.length - 1;
+		for (int slot = (chr * 0x9E37) & mask; sparseKeys[slot] != 0; slot = (slot + 1) & mask) {
+			if (sparseKeys[slot] == chr) { return sparseCounts[slot]; }
+		}
+		return 0;
+	}
+
+	// calls the consumer for every used character
+	private void forEachChar(IntConsumer consumer) {
+		for (int i = 0; i < DENSE_SIZE; ++i) {
+			if (dense[i] != 0) { consumer.accept(i); }
+		}
+		for (int i = 0; i < sparseKeys.length; ++i) {
+			if (sparseKeys[i] != 0 && sparseCounts[i] != 0) { consumer.accept(sparseKeys[i]); }
+		}
+	}
+
+	// order of the statistic: higher count first, then a -> z
+	private boolean isBefore(char a, char b) {
+		var countA = count(a);
+		var countB = count(b);
+		return (countA == countB) ? a < b : countA > countB;
+	}
+
+	/*
+	 * Selects the first k characters of the statistic (or the last k, if fromEnd) by insertion into a small sorted array,
+	 * so only O(used characters * k) steps are needed.
+	 */
+	private List<CharData> select(int k, boolean fromEnd) {
+		if (k < 0) { throw new IllegalArgumentException("k has to be positive"); }
+
+		var selected = new char[k];
+		var size = new int[1];
+		forEachChar(c -> {
+			var chr = (char) c;
+			var i = size[0];
+			if (i == k) {
+				if (k == 0 || isBefore(selected[k - 1], chr) != fromEnd) { return; }
+				--i;
+			} else {
+				++size[0];
+			}
+			for (; i > 0 && isBefore(chr, selected[i - 1]) != fromEnd; --i) {
+				selected[i] = selected[i - 1];
+			}
+			selected[i] = chr;
+		});
+
+		var result = new ArrayList<CharData>(size[0]);
+		for (int i = 0; i < size[0]; ++i) {
+			var chr = selected[fromEnd ? size[0] - 1 - i : i];
+			result.add(new CharData(chr, (long) count(chr)));
+		}
+		return result;
+	}
+
+	/**
+	 * returns the most used characters without sorting the whole statistic
+	 * 
+	 * @param k
+	 *          number of characters
+	 * @return the first (up to) k elements of the statistic
+	 */
+	public List<CharData> top(int k) {
+		return select(k, false);
+	}
+
+	/**
+	 * returns the least used characters without sorting the whole statistic
+	 * 
+	 * @param k
+	 *          number of characters
+	 * @return the last (up to) k elements of the statistic (in the order of the statistic)
+	 */
+	public List<CharData> bottom(int k) {
+		return select(k, true);
 	}
 
 	/**
@@ -59,7 +242,13 @@ public class CharStatistic {
 	 * @return the statistic
 	 */
 	public List<CharData> getList() {
-		return Collections.unmodifiableList(statistics);
+		if (statistics == null) {
+			var list = new ArrayList<CharData>();
+			forEachChar(c -> list.add(new CharData((char) c, (long) count((char) c))));
+			list.sort(CharData::compareTo);
+			statistics = Collections.unmodifiableList(list);
+		}
+		return statistics;
 	}
 
 	/**
@@ -68,7 +257,9 @@ public class CharStatistic {
 	 * @return the first element of the statistic
 	 */
 	public CharData getFirst() {
-		return statistics.getFirst();
+		var result = top(1);
+		if (result.isEmpty()) { throw new NoSuchElementException("the statistic is empty"); }
+		return result.getFirst();
 	}
 
 	/**
@@ -77,7 +268,9 @@ public class CharStatistic {
 	 * @return the last element of the statistic
 	 */
 	public CharData getLast() {
-		return statistics.getLast();
+		var result = bottom(1);
+		if (result.isEmpty()) { throw new NoSuchElementException("the statistic is empty"); }
+		return result.getFirst();
 	}
 
 	/**
@@ -89,7 +282,12 @@ public class CharStatistic {
 	 * @return an element of the statistic
 	 */
 	public CharData get(int index) {
-		return statistics.get(index);
+		if (statistics == null && index < SELECTION_LIMIT) {
+			var result = top(index + 1);
+			if (index >= result.size()) { throw new IndexOutOfBoundsException(index); }
+			return result.get(index);
+		}
+		return getList().get(index);
 	}
 
 	/**
@@ -99,6 +297,12 @@ public class CharStatistic {
 	 *          letter to be removed
 	 */
 	public void remove(char letter) {
-		statistics.removeIf(i -> i.chr() == letter);
+		if (letter < DENSE_SIZE) {
+			dense[letter] = 0;
+		} else if (count(letter) != 0) {
+			var slot = sparseSlot(letter);
+			sparseCounts[slot] = 0;
+		}
+		statistics = null;
 	}
 }
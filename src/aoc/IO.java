@@ -1,12 +1,22 @@
 package aoc;
 
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 
@@ -26,6 +36,103 @@ public class IO {
 
 	private static final String testFormat = "\t%02d | %8s | %32s | %32s | %10s%n";
 
+	private static final long MAP_SIZE = 1L << 30;
+
+	/*
+	 * Splits a file, that is memory mapped in parts of up to mapSize bytes, lazily into views of its bytes. Only the
+	 * current part is mapped, a line or token that does not end in it is re-mapped from its start. Lines are split at
+	 * '\n' (a trailing '\r' is removed), tokens at the delimiters and line breaks (empty tokens are skipped).
+	 */
+	private static class MappedSplitter extends Spliterators.AbstractSpliterator<ByteCharSequence> {
+		private final Path path;
+		private final long fileSize;
+		private final long mapSize;
+		private final boolean lines;
+		private final boolean[] isDelimiter = new boolean[256];
+		private long regionStart = 0;
+		private MappedByteBuffer region = null;
+		private int position = 0;
+
+		MappedSplitter(Path path, long mapSize, String delimiters) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.path = path;
+			this.mapSize = mapSize;
+			lines = (delimiters == null);
+
+			isDelimiter['\n'] = true;
+			if (!lines) {
+				isDelimiter['\r'] = true;
+				for (int i = 0; i < delimiters.length(); ++i) {
+					var c = delimiters.charAt(i);
+					if (c >= isDelimiter.length) { throw new IllegalArgumentException("Unexpected delimiter: " + c); }
+					isDelimiter[c] = true;
+				}
+			}
+
+			try {
+				fileSize = Files.size(path);
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Could not read file :" + path);
+			}
+		}
+
+		// the mapping stays valid after the channel is closed
+		private void map(long start) {
+			try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				region = channel.map(MapMode.READ_ONLY, start, Math.min(mapSize, fileSize - start));
+				regionStart = start;
+				position = 0;
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Could not map file :" + path);
+			}
+		}
+
+		private ByteCharSequence readNext() {
+			if (region == null) {
+				if (fileSize == 0) { return null; }
+				map(0);
+			}
+
+			for (;;) {
+				final int limit = region.limit();
+				final boolean lastRegion = regionStart + limit >= fileSize;
+
+				if (position >= limit) {
+					if (lastRegion) { return null; }
+					map(regionStart + limit);
+					continue;
+				}
+
+				int end = position;
+				while (end < limit && !isDelimiter[region.get(end) & 0xFF]) {
+					++end;
+				}
+
+				if (end == limit && !lastRegion) { // the line or token continues in the next part
+					if (position == 0) { throw new RuntimeException("Line or token too long in file :" + path); }
+					map(regionStart + position);
+					continue;
+				}
+
+				var start = position;
+				var tokenEnd = (lines && end > start && region.get(end - 1) == '\r') ? end - 1 : end;
+				position = end + 1;
+				if (!lines && tokenEnd == start) { continue; }
+				return new ByteCharSequence(region, start, tokenEnd - start);
+			}
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super ByteCharSequence> action) {
+			var next = readNext();
+			if (next == null) { return false; }
+			action.accept(next);
+			return true;
+		}
+	}
+
 	private long time;
 	private final String filename;
 	private int partCount = 0;
@@ -97,6 +204,59 @@ public class IO {
 
 
 
+	/**
+	 * Streams the lines of the input file lazily. The file is memory mapped (in parts of up to 1 GiB) and each line is
+	 * only a view of the mapped bytes, so even huge files are read with constant heap usage. A line has to fit into one
+	 * part.
+	 * 
+	 * @return lines of the file (without line break)
+	 */
+	public Stream<ByteCharSequence> streamLines() {
+		return StreamSupport.stream(new MappedSplitter(Paths.get(filename), MAP_SIZE, null), false);
+	}
+
+	/**
+	 * Opens the input file for reading (and seeking). The caller has to close the channel.
+	 * 
+	 * @return channel of the input file
+	 */
+	public FileChannel openChannel() {
+		try {
+			return FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Could not read file :" + filename);
+		}
+	}
+
+	/**
+	 * Streams the tokens of the input file lazily (see {@link #streamLines()}). Empty tokens are skipped. Only a token
+	 * has to fit into one mapped part, not its whole line.
+	 * 
+	 * @param delimiters
+	 *          each of these characters (and the line breaks) separates two tokens
+	 * @return tokens of all lines of the file
+	 */
+	public Stream<ByteCharSequence> streamTokens(String delimiters) {
+		return streamTokens(delimiters, MAP_SIZE);
+	}
+
+	/**
+	 * Streams the tokens of the input file lazily, see {@link #streamTokens(String)}.
+	 * 
+	 * @param delimiters
+	 *          each of these characters (and the line breaks) separates two tokens
+	 * @param mapSize
+	 *          maximum number of bytes mapped at once (small values are only useful for tests)
+	 * @return tokens of all lines of the file
+	 */
+	public Stream<ByteCharSequence> streamTokens(String delimiters, long mapSize) {
+		if (mapSize < 1 || mapSize > Integer.MAX_VALUE) { throw new IllegalArgumentException("Unexpected map size"); }
+		return StreamSupport.stream(new MappedSplitter(Paths.get(filename), mapSize, delimiters), false);
+	}
+
+
+
 	/**
 	 * prints the result of the puzzle. If in debug mode also checks versus an expected value and returns how long the
 	 * calculation took
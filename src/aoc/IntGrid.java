@@ -0,0 +1,229 @@
+package aoc;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+
+
+/**
+ * Acts as a two dimensional array of int. Internally it uses a one dimensional int array (row by row), so no boxing is
+ * needed.
+ */
+public class IntGrid {
+	private final int width;
+	private final int height;
+	private final int[] cells;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param width
+	 *          width of the two dimensional array
+	 * @param height
+	 *          height of the two dimensional array
+	 * @param o
+	 *          default value of the elements
+	 */
+	public IntGrid(int width, int height, int o) {
+		if (width < 1 || height < 1) { throw new IllegalArgumentException("size has to be positive"); }
+
+		this.width = width;
+		this.height = height;
+		cells = new int[Math.multiplyExact(width, height)];
+		if (o != 0) { Arrays.fill(cells, o); }
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param size
+	 *          size of the array (x = width, y = height).
+	 * @param o
+	 *          default value of the elements
+	 */
+	public IntGrid(Position size, int o) {
+		this(size.x, size.y, o);
+	}
+
+	private int from2Dto1D(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height) { throw new IndexOutOfBoundsException(x + "|" + y); }
+		return x + width * y;
+	}
+
+	/**
+	 * returns the element at position (x,y) of the array.
+	 * 
+	 * @param x
+	 *          x position
+	 * @param y
+	 *          y position
+	 * @return element of array
+	 */
+	public int get(int x, int y) {
+		return cells[from2Dto1D(x, y)];
+	}
+
+	/**
+	 * returns the element at a specified position of the array.
+	 * 
+	 * @param pos
+	 *          at position
+	 * @return element of array
+	 */
+	public int get(Position pos) {
+		return get(pos.x, pos.y);
+	}
+
+	/**
+	 * sets the element at position (x,y) of the array.
+	 * 
+	 * @param x
+	 *          x position
+	 * @param y
+	 *          y position
+	 * @param element
+	 *          new element
+	 * @return old element
+	 */
+	public int set(int x, int y, int element) {
+		var index = from2Dto1D(x, y);
+		var old = cells[index];
+		cells[index] = element;
+		return old;
+	}
+
+	/**
+	 * sets the element at position (x,y) of the array.
+	 * 
+	 * @param pos
+	 *          at position
+	 * @param element
+	 *          new element
+	 * @return old element
+	 */
+	public int set(Position pos, int element) {
+		return set(pos.x, pos.y, element);
+	}
+
+	/**
+	 * swaps the elements of the array
+	 * 
+	 * @param a
+	 *          first position
+	 * @param b
+	 *          second position
+	 */
+	public void swap(Position a, Position b) {
+		set(b, set(a, get(b)));
+	}
+
+	/**
+	 * size of the array
+	 * 
+	 * @return size (x=width, y=height)
+	 */
+	public Position size() {
+		return new Position(width, height);
+	}
+
+	/**
+	 * sets all elements of a rectangle
+	 * 
+	 * @param x
+	 *          left column
+	 * @param y
+	 *          top row
+	 * @param rectWidth
+	 *          width of the rectangle
+	 * @param rectHeight
+	 *          height of the rectangle
+	 * @param value
+	 *          new value of the elements
+	 */
+	public void fillRectangle(int x, int y, int rectWidth, int rectHeight, int value) {
+		if (rectWidth <= 0 || rectHeight <= 0) { return; }
+		from2Dto1D(x + rectWidth - 1, y + rectHeight - 1);
+
+		for (int row = y; row < y + rectHeight; ++row) {
+			var start = from2Dto1D(x, row);
+			Arrays.fill(cells, start, start + rectWidth, value);
+		}
+	}
+
+	/**
+	 * counts the elements with a value
+	 * 
+	 * @param value
+	 *          value to count
+	 * @return number of elements equal to value
+	 */
+	public long count(int value) {
+		long result = 0;
+		for (var i : cells) {
+			if (i == value) { ++result; }
+		}
+		return result;
+	}
+
+	/**
+	 * Rotates a row to the right (higher x), elements falling off the end appear at the beginning.
+	 * 
+	 * @param row
+	 *          row to be rotated
+	 * @param value
+	 *          number of cells, negative values rotate to the left
+	 */
+	public void rotateRow(int row, int value) {
+		final int start = from2Dto1D(0, row);
+		final int distance = Math.floorMod(value, width);
+		if (distance == 0) { return; }
+
+		var copy = Arrays.copyOfRange(cells, start, start + width);
+		System.arraycopy(copy, 0, cells, start + distance, width - distance);
+		System.arraycopy(copy, width - distance, cells, start, distance);
+	}
+
+	/**
+	 * Rotates a column downwards (higher y), elements falling off the end appear at the top.
+	 * 
+	 * @param column
+	 *          column to be rotated
+	 * @param value
+	 *          number of cells, negative values rotate upwards
+	 */
+	public void rotateColumn(int column, int value) {
+		from2Dto1D(column, 0);
+		final int distance = Math.floorMod(value, height);
+		if (distance == 0) { return; }
+
+		var copy = new int[height];
+		for (int i = 0; i < height; ++i) {
+			copy[(i + distance) % height] = cells[column + width * i];
+		}
+		for (int i = 0; i < height; ++i) {
+			cells[column + width * i] = copy[i];
+		}
+	}
+
+	/**
+	 * @return stream of the elements (row by row)
+	 */
+	public IntStream stream() {
+		return Arrays.stream(cells);
+	}
+
+	@Override
+	public String toString() {
+		var result = new StringBuilder("IntGrid " + width + "x" + height + ":\n");
+
+		for (int i = 0; i < height; ++i) {
+			for (int j = 0; j < width; ++j) {
+				result.append(get(j, i) + ",");
+			}
+			result.setCharAt(result.length() - 1, '\n');
+		}
+		result.deleteCharAt(result.length() - 1);
+
+		return result.toString();
+	}
+}
@@ -1,8 +1,11 @@
 package aoc;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.HexFormat;
 
 
@@ -11,7 +14,127 @@ import java.util.HexFormat;
  * Class to create an MD5 hash from a salt and an index
  */
 public class MD5Generator {
+	/**
+	 * length of an MD5 hash in bytes
+	 */
+	public static final int HASH_LENGTH = 16;
+
+	/**
+	 * implementation used to calculate the hashes
+	 */
+	public static enum Backend {
+		/**
+		 * java.security.MessageDigest
+		 */
+		MESSAGE_DIGEST,
+		/**
+		 * {@link MD5Kernel}, falls back to MessageDigest for messages longer than one block
+		 */
+		KERNEL;
+	}
+
+	/**
+	 * Reusable state to create many hashes one after another. The salt is encoded only once, the digits of the index are
+	 * written directly behind it into a reused buffer, so no memory is allocated per hash. A Hasher is not thread safe,
+	 * so every worker thread needs its own instance (see {@link MD5Generator#newHasher()}).
+	 */
+	public class Hasher {
+		private static final int MAX_DIGITS = String.valueOf(Integer.MIN_VALUE).length();
+
+		protected final MessageDigest md = createMessageDigest();
+		protected final byte[] hash = new byte[HASH_LENGTH];
+		protected final byte[] message = Arrays.copyOf(saltBytes, saltBytes.length + MAX_DIGITS);
+
+		/**
+		 * writes salt + index into the message buffer
+		 * 
+		 * @param index
+		 *          index
+		 * @return length of the message
+		 */
+		protected int encode(int index) {
+			long value = index;
+			int start = saltBytes.length;
+			if (value < 0) {
+				message[start++] = '-';
+				value = -value;
+			}
+
+			int end = start + 1;
+			for (long i = value; i >= 10; i /= 10) {
+				++end;
+			}
+
+			for (int i = end - 1; i >= start; --i) {
+				message[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+
+			return end;
+		}
+
+		/**
+		 * creates the MD5 hash of salt + index and writes it into a given array
+		 * 
+		 * @param index
+		 *          index
+		 * @param out
+		 *          array for the hash
+		 * @param offset
+		 *          position of the hash in out
+		 */
+		public void hash(int index, byte[] out, int offset) {
+			md.update(message, 0, encode(index));
+			digest(out, offset);
+		}
+
+		/**
+		 * creates the MD5 hash of salt + index
+		 * 
+		 * @param index
+		 *          index
+		 * @return MD5 hash as array of bytes. The array is reused by the next call.
+		 */
+		public byte[] hash(int index) {
+			hash(index, hash, 0);
+			return hash;
+		}
+
+		protected void digest(byte[] out, int offset) {
+			try {
+				md.digest(out, offset, HASH_LENGTH);
+			} catch (DigestException e) {
+				e.printStackTrace();
+				throw new RuntimeException("could not get MD5 hash");
+			}
+		}
+	}
+
+	/**
+	 * Hasher using the {@link MD5Kernel}. The salt is set as prefix, so its complete words are only processed once.
+	 */
+	public class KernelHasher extends Hasher {
+		protected final MD5Kernel kernel = new MD5Kernel();
+
+		protected KernelHasher() {
+			if (saltBytes.length <= MD5Kernel.MAX_MESSAGE_LENGTH) { kernel.setPrefix(saltBytes, saltBytes.length); }
+		}
+
+		@Override
+		public void hash(int index, byte[] out, int offset) {
+			var length = encode(index);
+			if (length > MD5Kernel.MAX_MESSAGE_LENGTH) {
+				md.update(message, 0, length);
+				digest(out, offset);
+			} else {
+				kernel.digest(message, length, out, offset);
+			}
+		}
+	}
+
 	private final String salt;
+	private final byte[] saltBytes;
+	private final Backend backend;
 
 	/**
 	 * constructor
@@ -20,19 +143,53 @@ public class MD5Generator {
 	 *          salt used
 	 */
 	public MD5Generator(String salt) {
+		this(salt, Backend.MESSAGE_DIGEST);
+	}
+
+	/**
+	 * constructor
+	 * 
+	 * @param salt
+	 *          salt used
+	 * @param backend
+	 *          implementation used by the Hashers
+	 */
+	public MD5Generator(String salt, Backend backend) {
 		this.salt = salt;
+		this.backend = backend;
+		saltBytes = salt.getBytes(StandardCharsets.UTF_8);
+	}
+
+	protected static MessageDigest createMessageDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+			throw new RuntimeException("could not get MD5 hash");
+		}
 	}
 
 	protected static byte[] createHash(String str) {
 		try {
-			MessageDigest md = MessageDigest.getInstance("MD5");
-			return md.digest(str.getBytes("UTF-8"));
-		} catch (UnsupportedEncodingException | NoSuchAlgorithmException e) {
+			return createMessageDigest().digest(str.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
 			e.printStackTrace();
 			throw new RuntimeException("could not get MD5 hash");
 		}
 	}
 
+	/**
+	 * creates a new Hasher for this salt, to be used by a single thread
+	 * 
+	 * @return new Hasher
+	 */
+	public Hasher newHasher() {
+		return switch (backend) {
+		case MESSAGE_DIGEST -> new Hasher();
+		case KERNEL -> new KernelHasher();
+		};
+	}
+
 	/**
 	 * creates the MD5 hash of salt + index
 	 * 
@@ -0,0 +1,163 @@
+package aoc;
+
+/**
+ * Pure Java MD5 compression for messages, that fit into a single 64 byte block (up to 55 bytes). The message is
+ * processed as int words, without provider lookup or copying. If all messages start with the same prefix (e.g. the
+ * salt), the steps that only use the complete words of the prefix are calculated once (midstate) and skipped later.
+ * Not thread safe.
+ */
+public class MD5Kernel {
+	/**
+	 * longest message, that fits into one block (the rest is needed for padding and length)
+	 */
+	public static final int MAX_MESSAGE_LENGTH = 55;
+
+	private static final int WORD_COUNT = 16;
+	private static final int STEP_COUNT = 64;
+
+	private static final int A0 = 0x67452301;
+	private static final int B0 = 0xefcdab89;
+	private static final int C0 = 0x98badcfe;
+	private static final int D0 = 0x10325476;
+
+	//@formatter:off
+	private static final int[] SHIFT = {
+			7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22, 7, 12, 17, 22,
+			5,  9, 14, 20, 5,  9, 14, 20, 5,  9, 14, 20, 5,  9, 14, 20,
+			4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23, 4, 11, 16, 23,
+			6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21, 6, 10, 15, 21
+	};
+
+	private static final int[] K = {
+			0xd76aa478, 0xe8c7b756, 0x242070db, 0xc1bdceee, 0xf57c0faf, 0x4787c62a, 0xa8304613, 0xfd469501,
+			0x698098d8, 0x8b44f7af, 0xffff5bb1, 0x895cd7be, 0x6b901122, 0xfd987193, 0xa679438e, 0x49b40821,
+			0xf61e2562, 0xc040b340, 0x265e5a51, 0xe9b6c7aa, 0xd62f105d, 0x02441453, 0xd8a1e681, 0xe7d3fbc8,
+			0x21e1cde6, 0xc33707d6, 0xf4d50d87, 0x455a14ed, 0xa9e3e905, 0xfcefa3f8, 0x676f02d9, 0x8d2a4c8a,
+			0xfffa3942, 0x8771f681, 0x6d9d6122, 0xfde5380c, 0xa4beea44, 0x4bdecfa9, 0xf6bb4b60, 0xbebfbc70,
+			0x289b7ec6, 0xeaa127fa, 0xd4ef3085, 0x04881d05, 0xd9d4d039, 0xe6db99e5, 0x1fa27cf8, 0xc4ac5665,
+			0xf4292244, 0x432aff97, 0xab9423a7, 0xfc93a039, 0x655b59c3, 0x8f0ccc92, 0xffeff47d, 0x85845dd1,
+			0x6fa87e4f, 0xfe2ce6e0, 0xa3014314, 0x4e0811a1, 0xf7537e82, 0xbd3af235, 0x2ad7d2bb, 0xeb86d391
+	};
+	//@formatter:on
+
+	private final int[] words = new int[WORD_COUNT];
+	private int prefixWords = 0;
+	private int midA = A0;
+	private int midB = B0;
+	private int midC = C0;
+	private int midD = D0;
+
+	/**
+	 * Sets the prefix all following messages start with. The steps using only complete words of the prefix are
+	 * calculated now and reused by {@link #digest(byte[], int, byte[], int)}.
+	 *
+	 * @param prefix
+	 *          array containing the prefix
+	 * @param length
+	 *          length of the prefix
+	 */
+	public void setPrefix(byte[] prefix, int length) {
+		if (length > MAX_MESSAGE_LENGTH) { throw new IllegalArgumentException("prefix does not fit into one block"); }
+
+		prefixWords = 0;
+		loadWords(prefix, length);
+		prefixWords = length / Integer.BYTES;
+
+		int a = A0;
+		int b = B0;
+		int c = C0;
+		int d = D0;
+		for (int i = 0; i < prefixWords; ++i) {
+			int f = (b & c) | (~b & d);
+			int temp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + words[i], SHIFT[i]);
+			a = temp;
+		}
+		midA = a;
+		midB = b;
+		midC = c;
+		midD = d;
+	}
+
+	// packs the message (little endian) and the padding into the words, the prefix words are kept
+	private void loadWords(byte[] message, int length) {
+		for (int i = prefixWords; i < WORD_COUNT; ++i) {
+			words[i] = 0;
+		}
+
+		for (int i = prefixWords * Integer.BYTES; i < length; ++i) {
+			words[i >> 2] |= (message[i] & 0xFF) << ((i & 3) << 3);
+		}
+		words[length >> 2] |= 0x80 << ((length & 3) << 3);
+		words[WORD_COUNT - 2] = length << 3;
+	}
+
+	/**
+	 * Creates the MD5 hash of a message. The message has to start with the prefix (see
+	 * {@link #setPrefix(byte[], int)}).
+	 *
+	 * @param message
+	 *          array containing the message
+	 * @param length
+	 *          length of the message
+	 * @param out
+	 *          array for the hash
+	 * @param offset
+	 *          position of the hash in out
+	 */
+	public void digest(byte[] message, int length, byte[] out, int offset) {
+		if (length > MAX_MESSAGE_LENGTH) { throw new IllegalArgumentException("message does not fit into one block"); }
+
+		loadWords(message, length);
+
+		int a = midA;
+		int b = midB;
+		int c = midC;
+		int d = midD;
+		for (int i = prefixWords; i < 16; ++i) {
+			int f = (b & c) | (~b & d);
+			int temp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + words[i], SHIFT[i]);
+			a = temp;
+		}
+		for (int i = 16; i < 32; ++i) {
+			int f = (d & b) | (~d & c);
+			int temp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + words[(5 * i + 1) & 0x0F], SHIFT[i]);
+			a = temp;
+		}
+		for (int i = 32; i < 48; ++i) {
+			int f = b ^ c ^ d;
+			int temp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + words[(3 * i + 5) & 0x0F], SHIFT[i]);
+			a = temp;
+		}
+		for (int i = 48; i < STEP_COUNT; ++i) {
+			int f = c ^ (b | ~d);
+			int temp = d;
+			d = c;
+			c = b;
+			b += Integer.rotateLeft(a + f + K[i] + words[(7 * i) & 0x0F], SHIFT[i]);
+			a = temp;
+		}
+
+		writeWord(A0 + a, out, offset);
+		writeWord(B0 + b, out, offset + 4);
+		writeWord(C0 + c, out, offset + 8);
+		writeWord(D0 + d, out, offset + 12);
+	}
+
+	private static void writeWord(int value, byte[] out, int offset) {
+		for (int i = 0; i < Integer.BYTES; ++i) {
+			out[offset + i] = (byte) (value >>> (i << 3));
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package aoc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+
+
+/**
+ * Searches the MD5 hashes of salt + index for matches on all available cores. The index space is split into chunks,
+ * which are hashed in parallel on the common ForkJoinPool. Each worker thread uses its own
+ * {@link MD5Generator.Hasher}. The matches are always returned in index order.
+ */
+public class MD5Search {
+	/**
+	 * a hash that passed the filter
+	 *
+	 * @param index
+	 *          index of the hash
+	 * @param hash
+	 *          MD5 hash of salt + index
+	 */
+	public static record Match(int index, byte[] hash) {
+		/**
+		 * @return MD5 hash as hex string
+		 */
+		public String hex() {
+			return HexFormat.of().formatHex(hash);
+		}
+	}
+
+	private static final int CHUNK_SIZE = 1 << 12;
+	private static final int CHUNKS_PER_WORKER = 4;
+	private static final int CANCEL_CHECK_MASK = (1 << 6) - 1;
+
+	private final ThreadLocal<MD5Generator.Hasher> hashers;
+	private final int blockSize;
+
+	/**
+	 * constructor
+	 *
+	 * @param generator
+	 *          creates the hashes (and knows the salt)
+	 */
+	public MD5Search(MD5Generator generator) {
+		hashers = ThreadLocal.withInitial(generator::newHasher);
+		blockSize = CHUNK_SIZE * CHUNKS_PER_WORKER * ForkJoinPool.getCommonPoolParallelism();
+	}
+
+	private List<Match> searchChunk(int from, int to, Predicate<byte[]> filter, BooleanSupplier cancelled) {
+		var hasher = hashers.get();
+		var result = new ArrayList<Match>();
+
+		for (int i = from; i < to; ++i) {
+			if ((i & CANCEL_CHECK_MASK) == 0 && cancelled.getAsBoolean()) { break; }
+
+			var hash = hasher.hash(i);
+			if (filter.test(hash)) { result.add(new Match(i, hash.clone())); }
+		}
+
+		return result;
+	}
+
+	private List<Match> findAll(int from, int to, Predicate<byte[]> filter, BooleanSupplier cancelled) {
+		if (to <= from) { return List.of(); }
+
+		final int chunkCount = (int) (((long) to - from + CHUNK_SIZE - 1) / CHUNK_SIZE);
+		return IntStream.range(0, chunkCount).parallel().mapToObj(chunk -> {
+			var start = from + (long) chunk * CHUNK_SIZE;
+			var end = Math.min(to, start + CHUNK_SIZE);
+			return searchChunk((int) start, (int) end, filter, cancelled);
+		}).flatMap(List::stream).toList();
+	}
+
+	/**
+	 * finds all hashes in an index range, that pass the filter
+	 *
+	 * @param from
+	 *          first index (inclusive)
+	 * @param to
+	 *          last index (exclusive)
+	 * @param filter
+	 *          decides if a hash is a match. The hash array is reused, so it must not be stored.
+	 * @return matches in index order
+	 */
+	public List<Match> findAll(int from, int to, Predicate<byte[]> filter) {
+		return findAll(from, to, filter, () -> false);
+	}
+
+	/**
+	 * finds the first hashes from an index on, that pass the filter
+	 *
+	 * @param startIndex
+	 *          first index to be checked
+	 * @param count
+	 *          number of matches needed
+	 * @param filter
+	 *          decides if a hash is a match. The hash array is reused, so it must not be stored.
+	 * @return matches in index order
+	 */
+	public List<Match> findFirst(int startIndex, int count, Predicate<byte[]> filter) {
+		var result = new ArrayList<Match>(count);
+		var i = iterator(startIndex, filter);
+		while (result.size() < count && i.hasNext()) {
+			result.add(i.next());
+		}
+		return result;
+	}
+
+	/**
+	 * Iterates lazily over all matches from an index on. The hashes are calculated in parallel blocks, when the iterator
+	 * runs out of matches.
+	 */
+	public class Matches implements Iterator<Match> {
+		private final Deque<Match> pending = new ArrayDeque<>();
+		private final Predicate<byte[]> filter;
+		private int nextIndex;
+		private volatile boolean closed = false;
+
+		private Matches(int startIndex, Predicate<byte[]> filter) {
+			this.filter = filter;
+			nextIndex = startIndex;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (pending.isEmpty() && nextIndex < Integer.MAX_VALUE && !closed) {
+				var end = (int) Math.min(Integer.MAX_VALUE, (long) nextIndex + blockSize);
+				pending.addAll(findAll(nextIndex, end, filter, () -> closed));
+				nextIndex = end;
+			}
+			return !pending.isEmpty() && !closed;
+		}
+
+		@Override
+		public Match next() {
+			var result = poll();
+			if (result == null) { throw new NoSuchElementException("no more matches"); }
+			return result;
+		}
+
+		/**
+		 * Returns the next match in one step, so a close() from another thread between hasNext() and next() does not
+		 * matter.
+		 *
+		 * @return next match or null, if there are no more matches or the search is closed
+		 */
+		public Match poll() {
+			return hasNext() ? pending.poll() : null;
+		}
+
+		/**
+		 * Stops the search. May be called from another thread, a block that is currently calculated is aborted.
+		 */
+		public void close() {
+			closed = true;
+		}
+	}
+
+	/**
+	 * Iterates lazily over all matches from an index on.
+	 *
+	 * @param startIndex
+	 *          first index to be checked
+	 * @param filter
+	 *          decides if a hash is a match. The hash array is reused, so it must not be stored.
+	 * @return iterator of the matches in index order
+	 */
+	public Matches iterator(int startIndex, Predicate<byte[]> filter) {
+		return new Matches(startIndex, filter);
+	}
+}
@@ -0,0 +1,242 @@
+package aoc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+
+/**
+ * Cursor over the bytes of a line (or any other part of a ByteBuffer) to parse the puzzle input without split() or
+ * regular expressions. Numbers are parsed directly from the bytes, words are returned as {@link ByteCharSequence}
+ * views, so no Strings are created.
+ */
+public class Tokenizer {
+	private final ByteBuffer buffer;
+	private final int end;
+	private int position;
+
+	/**
+	 * constructor
+	 *
+	 * @param buffer
+	 *          contains the input
+	 * @param start
+	 *          absolute position of the first byte
+	 * @param end
+	 *          absolute position after the last byte
+	 */
+	public Tokenizer(ByteBuffer buffer, int start, int end) {
+		this.buffer = buffer;
+		this.position = start;
+		this.end = end;
+	}
+
+	/**
+	 * constructor
+	 *
+	 * @param bytes
+	 *          input
+	 */
+	public Tokenizer(byte[] bytes) {
+		this(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	/**
+	 * Creates a Tokenizer for a line. A ByteCharSequence is used without copying, other CharSequences are encoded once.
+	 *
+	 * @param line
+	 *          input
+	 * @return new Tokenizer
+	 */
+	public static Tokenizer of(CharSequence line) {
+		if (line instanceof ByteCharSequence bytes) {
+			return new Tokenizer(bytes.buffer(), bytes.offset(), bytes.offset() + bytes.length());
+		}
+		return new Tokenizer(line.toString().getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isLetter(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+
+	private IllegalArgumentException unexpected(String expected) {
+		return new IllegalArgumentException("Unexpected value at " + position + ": " + expected + " expected");
+	}
+
+	/**
+	 * @return current absolute position
+	 */
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * @return true, if all bytes are consumed
+	 */
+	public boolean atEnd() {
+		return position >= end;
+	}
+
+	/**
+	 * @return true, if there is anything but spaces left
+	 */
+	public boolean hasNext() {
+		skipSpaces();
+		return !atEnd();
+	}
+
+	/**
+	 * @return the next byte, without consuming it
+	 */
+	public byte peek() {
+		if (atEnd()) { throw unexpected("character"); }
+		return buffer.get(position);
+	}
+
+	/**
+	 * @return the next byte as character
+	 */
+	public char nextChar() {
+		var result = (char) (peek() & 0xFF);
+		++position;
+		return result;
+	}
+
+	/**
+	 * skips all following spaces
+	 *
+	 * @return this
+	 */
+	public Tokenizer skipSpaces() {
+		while (position < end && buffer.get(position) == ' ') {
+			++position;
+		}
+		return this;
+	}
+
+	/**
+	 * moves the cursor to the next occurrence of a byte (or the end)
+	 *
+	 * @param b
+	 *          byte to look for
+	 * @return this
+	 */
+	public Tokenizer skipUntil(byte b) {
+		while (position < end && buffer.get(position) != b) {
+			++position;
+		}
+		return this;
+	}
+
+	/**
+	 * moves the cursor behind the next occurrence of a byte
+	 *
+	 * @param b
+	 *          byte to look for
+	 * @return this
+	 */
+	public Tokenizer skipPast(byte b) {
+		skipUntil(b);
+		if (atEnd()) { throw unexpected("'" + (char) b + "'"); }
+		++position;
+		return this;
+	}
+
+	/**
+	 * checks if the following characters (after spaces) equal a word and consumes them in this case
+	 *
+	 * @param word
+	 *          expected word
+	 * @return true, if the word was found
+	 */
+	public boolean skipIf(String word) {
+		skipSpaces();
+		if (end - position < word.length()) { return false; }
+
+		for (int i = 0; i < word.length(); ++i) {
+			if (buffer.get(position + i) != word.charAt(i)) { return false; }
+		}
+		position += word.length();
+		return true;
+	}
+
+	/**
+	 * consumes a word (after spaces), that has to follow
+	 *
+	 * @param word
+	 *          expected word
+	 * @return this
+	 */
+	public Tokenizer expect(String word) {
+		if (!skipIf(word)) { throw unexpected("\"" + word + "\""); }
+		return this;
+	}
+
+	/**
+	 * returns the following letters (after spaces)
+	 *
+	 * @return view of the word
+	 */
+	public ByteCharSequence nextWord() {
+		skipSpaces();
+		var start = position;
+		while (position < end && isLetter(buffer.get(position))) {
+			++position;
+		}
+		if (start == position) { throw unexpected("word"); }
+		return new ByteCharSequence(buffer, start, position - start);
+	}
+
+	/**
+	 * returns the following characters until the next space (after spaces)
+	 *
+	 * @return view of the token
+	 */
+	public ByteCharSequence nextToken() {
+		skipSpaces();
+		var start = position;
+		skipUntil((byte) ' ');
+		if (start == position) { throw unexpected("token"); }
+		return new ByteCharSequence(buffer, start, position - start);
+	}
+
+	/**
+	 * returns the following characters until a byte (exclusive). The cursor stays at that byte.
+	 *
+	 * @param b
+	 *          byte, that ends the view
+	 * @return view of the characters
+	 */
+	public ByteCharSequence nextUntil(byte b) {
+		var start = position;
+		skipUntil(b);
+		return new ByteCharSequence(buffer, start, position - start);
+	}
+
+	/**
+	 * parses the following (optionally negative) number (after spaces)
+	 *
+	 * @return the number
+	 */
+	public int nextInt() {
+		skipSpaces();
+		boolean negative = position < end && buffer.get(position) == '-';
+		if (negative) { ++position; }
+
+		if (position >= end || !isDigit(buffer.get(position))) { throw unexpected("number"); }
+
+		long result = 0;
+		while (position < end && isDigit(buffer.get(position))) {
+			result = result * 10 + buffer.get(position++) - '0';
+			if (result > (long) Integer.MAX_VALUE + 1) { throw new NumberFormatException("number too large"); }
+		}
+
+		result = negative ? -result : result;
+		if (result > Integer.MAX_VALUE) { throw new NumberFormatException("number too large"); }
+		return (int) result;
+	}
+}
@@ -201,11 +201,18 @@ public class Day01 extends Day00 {
 
 		c = new Route(Arrays.asList("R8", "R4", "R4", "R8"));
 		io.printTest(c.getShortestRoutePart2(), 4);
+
+		var tokens = io.streamTokens(", ").map(CharSequence::toString).toList();
+		io.printTest(tokens.equals(io.readAllLines(", ")), true);
+
+		// the input is one line, that spans many mapped parts of 16 bytes
+		tokens = io.streamTokens(", ", 16).map(CharSequence::toString).toList();
+		io.printTest(tokens.equals(io.readAllLines(", ")), true);
 	}
 
 	@Override
 	public void solvePuzzle() {
-		var c = new Route(io.readAllLines(", "));
+		var c = new Route(io.streamTokens(", ").map(CharSequence::toString).toList());
 		io.printResult(c.getShortestRoutePart1(), 236);
 		io.printResult(c.getShortestRoutePart2(), 182);
 	}
@@ -48,6 +48,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import aoc.Day00;
+import aoc.Tokenizer;
 
 
 
@@ -68,21 +69,23 @@ public class Day03 extends Day00 {
 			// @formatter:on
 		}
 
-		private static Triangle create(String str) {
+		private static Triangle create(CharSequence str) {
 			return new Triangle(Collections.unmodifiableList(readLine(str)));
 		}
 	}
 
-	private static List<Integer> readLine(String in) {
-		var strList = new LinkedList<>(Arrays.asList(in.trim().split(" +")));
-		if (strList.size() != SIDE_COUNT) { throw new IllegalArgumentException("Triangle only works with 3 sides"); }
-
+	private static List<Integer> readLine(CharSequence in) {
+		var tokens = Tokenizer.of(in);
 		var result = new ArrayList<Integer>(SIDE_COUNT);
-		strList.forEach(i -> result.add(Integer.parseInt(i)));
+		while (tokens.hasNext()) {
+			result.add(tokens.nextInt());
+		}
+
+		if (result.size() != SIDE_COUNT) { throw new IllegalArgumentException("Triangle only works with 3 sides"); }
 		return result;
 	}
 
-	private static List<Triangle> readFileHorizontal(List<String> input) {
+	private static List<Triangle> readFileHorizontal(List<? extends CharSequence> input) {
 		var result = new LinkedList<Triangle>();
 		input.forEach(i -> result.add(Triangle.create(i)));
 		return result;
@@ -105,7 +108,7 @@ public class Day03 extends Day00 {
 		return result;
 	}
 
-	private static List<Triangle> readFileVertical(List<String> input) {
+	private static List<Triangle> readFileVertical(List<? extends CharSequence> input) {
 		if (input.size() % SIDE_COUNT != 0) { throw new IllegalArgumentException("Invalid input size."); }
 
 		var result = new LinkedList<Triangle>();
@@ -156,7 +159,7 @@ public class Day03 extends Day00 {
 
 	@Override
 	public void solvePuzzle() {
-		var input = io.readAllLines();
+		var input = io.streamLines().toList();
 		var triangles = readFileHorizontal(input);
 		io.printResult(countValid(triangles), 983L);
 
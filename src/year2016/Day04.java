@@ -48,19 +48,25 @@
 
 package year2016;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 import aoc.CharStatistic;
 import aoc.Day00;
+import aoc.Tokenizer;
 
 
 
 @SuppressWarnings("javadoc")
 public class Day04 extends Day00 {
 	private static final int CHECKSUM_LENGTH = 5;
+	private static final int INVALID = -1;
 
 	private static record Room(String name, int sectorId, String checkSum) {
 		Room {
@@ -78,21 +84,28 @@ public class Day04 extends Day00 {
 			letters.remove('-');
 
 			var checkSumBuffer = new StringBuilder(CHECKSUM_LENGTH);
-			for (int i = 0; i < CHECKSUM_LENGTH; ++i) {
-				checkSumBuffer.append(letters.get(i).chr());
-			}
+			letters.top(CHECKSUM_LENGTH).forEach(i -> checkSumBuffer.append(i.chr()));
 
 			return !checkSumBuffer.toString().equals(checkSum);
 		}
 
-		static Room create(String str) {
-			var buffer = str.split("-(?=\\d)"); // split at "-[number]", but keep the number
-			var name = buffer[0];
-			buffer = buffer[1].split("[\\[\\]]"); // split at "[", also removes trailing "]"
-			return new Room(name, Integer.parseInt(buffer[0]), buffer[1]);
+		static Room create(CharSequence str) {
+			// example: aaaaa-bbb-z-y-x-123[abxyz]
+			var tokens = Tokenizer.of(str);
+			var nameAndId = tokens.nextUntil((byte) '[');
+
+			int nameEnd = nameAndId.length() - 1; // the name ends at the last '-'
+			while (nameEnd >= 0 && nameAndId.charAt(nameEnd) != '-') {
+				--nameEnd;
+			}
+			if (nameEnd < 0) { throw new IllegalArgumentException("Unexpected value: " + str); }
+
+			var sectorId = Tokenizer.of(nameAndId.subSequence(nameEnd + 1, nameAndId.length())).nextInt();
+			var checkSum = tokens.skipPast((byte) '[').nextUntil((byte) ']');
+			return new Room(nameAndId.subSequence(0, nameEnd).toString(), sectorId, checkSum.toString()); // record fields
 		}
 
-		static List<Room> createList(List<String> list) {
+		static List<Room> createList(List<? extends CharSequence> list) {
 			var buffer = new LinkedList<Room>();
 			list.forEach(str -> {
 				var room = Room.create(str);
@@ -102,13 +115,137 @@ public class Day04 extends Day00 {
 		}
 	}
 
+	/**
+	 * Validates rooms straight from the characters of the lines, without creating Rooms or Strings. The letters are
+	 * counted in a 26 slot array (one per thread) and the checksum is compared with a fixed top 5 selection. The sector
+	 * IDs of the real rooms are summed up and the rooms, whose decrypted name is searched for, are collected. Partial
+	 * batches of a parallel stream are merged.
+	 */
+	private static class RoomBatch {
+		private static final ThreadLocal<int[]> COUNTERS = ThreadLocal.withInitial(() -> new int[RoomList.LETTER_COUNT]);
+
+		private final String findName;
+		private long sectorIdSum = 0;
+		private int realRooms = 0;
+		private final List<Integer> matches = new ArrayList<>();
+
+		RoomBatch(String findName) {
+			this.findName = findName;
+		}
+
+		private static IllegalArgumentException unexpected(CharSequence line) {
+			return new IllegalArgumentException("Unexpected value: " + line);
+		}
+
+		// example: aaaaa-bbb-z-y-x-123[abxyz], returns the sector ID or INVALID for a decoy
+		static int checkRoom(CharSequence line) {
+			final int checkSumStart = line.length() - CHECKSUM_LENGTH - 1;
+			if (checkSumStart < 4 || line.charAt(checkSumStart - 1) != '[' || line.charAt(line.length() - 1) != ']') {
+				throw unexpected(line);
+			}
+
+			var nameEnd = checkSumStart - 2; // the name ends at the last '-'
+			while (nameEnd >= 0 && line.charAt(nameEnd) >= '0' && line.charAt(nameEnd) <= '9') {
+				--nameEnd;
+			}
+			if (nameEnd < 0 || line.charAt(nameEnd) != '-' || nameEnd == checkSumStart - 2) { throw unexpected(line); }
+			if (nameEnd == 0) { throw new IllegalArgumentException("name has to be in lower case or '-'"); }
+			for (int i = checkSumStart; i < checkSumStart + CHECKSUM_LENGTH; ++i) { // the format first, like Room
+				var chr = line.charAt(i);
+				if (chr < 'a' || chr > 'z') { throw new IllegalArgumentException("checkSum has to be in lower case"); }
+			}
+			int sectorId = 0;
+			for (int i = nameEnd + 1; i < checkSumStart - 1; ++i) {
+				sectorId = Math.addExact(Math.multiplyExact(sectorId, 10), line.charAt(i) - '0');
+			}
+
+			var counter = COUNTERS.get();
+			Arrays.fill(counter, 0);
+			for (int i = 0; i < nameEnd; ++i) {
+				var chr = line.charAt(i);
+				if (chr >= 'a' && chr <= 'z') {
+					++counter[chr - 'a'];
+				} else if (chr != '-') {
+					throw new IllegalArgumentException("name has to be in lower case or '-'");
+				}
+			}
+
+			// top 5: higher count first, then a -> z (the letters are checked in alphabetical order)
+			var top = new int[CHECKSUM_LENGTH];
+			int size = 0;
+			for (int letter = 0; letter < counter.length; ++letter) {
+				if (counter[letter] == 0) { continue; }
+				if (size == CHECKSUM_LENGTH && counter[letter] <= counter[top[size - 1]]) { continue; }
+
+				int i = (size < CHECKSUM_LENGTH) ? size++ : size - 1;
+				for (; i > 0 && counter[letter] > counter[top[i - 1]]; --i) {
+					top[i] = top[i - 1];
+				}
+				top[i] = letter;
+			}
+
+			if (size < CHECKSUM_LENGTH) { return INVALID; }
+			for (int i = 0; i < CHECKSUM_LENGTH; ++i) {
+				if (line.charAt(checkSumStart + i) - 'a' != top[i]) { return INVALID; }
+			}
+			return sectorId;
+		}
+
+		// compares the decrypted name with the searched one, without decrypting into a new String
+		private boolean isFindName(CharSequence line, int sectorId) {
+			if (findName == null || line.length() <= findName.length() || line.charAt(findName.length()) != '-') {
+				return false;
+			}
+
+			var shiftBy = sectorId % RoomList.LETTER_COUNT;
+			for (int i = 0; i < findName.length(); ++i) {
+				if (RoomList.shiftChar(line.charAt(i), shiftBy) != findName.charAt(i)) { return false; }
+			}
+			// the name has to end here, not just a prefix of it
+			for (int i = findName.length() + 1; i < line.length(); ++i) {
+				var chr = line.charAt(i);
+				if (chr < '0' || chr > '9') { return chr == '['; }
+			}
+			return false;
+		}
+
+		void add(CharSequence line) {
+			var sectorId = checkRoom(line);
+			if (sectorId == INVALID) { return; }
+
+			sectorIdSum += sectorId;
+			++realRooms;
+			if (isFindName(line, sectorId)) { matches.add(sectorId); }
+		}
+
+		void merge(RoomBatch other) {
+			sectorIdSum += other.sectorIdSum;
+			realRooms += other.realRooms;
+			matches.addAll(other.matches);
+		}
+
+		static RoomBatch validate(Stream<? extends CharSequence> lines, String findName) {
+			return lines.parallel().collect(() -> new RoomBatch(findName), RoomBatch::add, RoomBatch::merge);
+		}
+	}
+
+
+
 	public static class RoomList {
 		final static int LETTER_COUNT = 'z' - 'a' + 1;
 
 		private List<Room> rooms;
+		private final Map<String, Integer> sectorIdByName = new HashMap<>(); // decrypted name -> sector ID
 
-		RoomList(List<String> input) {
+		RoomList(List<? extends CharSequence> input) {
 			rooms = Room.createList(input);
+
+			// index built once, the first room wins for duplicate names (like the former linear search)
+			var buffer = new char[0];
+			for (var i : rooms) {
+				if (buffer.length < i.name().length()) { buffer = new char[i.name().length()]; }
+				sectorIdByName.putIfAbsent(decryptRoom(i, buffer), i.sectorId());
+			}
 		}
 
 		int sumSectorIds() {
@@ -122,15 +259,20 @@ public class Day04 extends Day00 {
 			return chr;
 		}
 
-		private static String decryptRoom(Room r) {
+		// decrypts into a reused buffer, that has to be at least as long as the name
+		private static String decryptRoom(Room r, char[] buffer) {
 			var shiftBy = r.sectorId() % LETTER_COUNT;
-			var result = new StringBuilder(r.name());
+			var name = r.name();
 
-			for (int i = 0; i < result.length(); ++i) {
-				result.setCharAt(i, shiftChar(result.charAt(i), shiftBy));
+			for (int i = 0; i < name.length(); ++i) {
+				buffer[i] = shiftChar(name.charAt(i), shiftBy);
 			}
 
-			return result.toString();
+			return new String(buffer, 0, name.length());
+		}
+
+		private static String decryptRoom(Room r) {
+			return decryptRoom(r, new char[r.name().length()]);
 		}
 
 		// To find out, what "North Pole objects" actually means ("northpole object storage")
@@ -139,13 +281,8 @@ public class Day04 extends Day00 {
 		}
 
 		int findRoom(String ROOM_NAME) {
-			for (var i : rooms) {
-				// @formatter:off
-				if (i.name().length() == ROOM_NAME.length() // faster to check first, if possible match is there
-				&& decryptRoom(i).equals(ROOM_NAME))
-					{ return i.sectorId(); }
-				// @formatter:on
-			}
+			var result = sectorIdByName.get(ROOM_NAME);
+			if (result != null) { return result; }
 
 			throw new RuntimeException("Room not found");
 		}
@@ -180,14 +317,49 @@ public class Day04 extends Day00 {
 
 		io.printTest(RoomList.decryptRoom(Room.create(input.get(4))), findStr);
 		io.printTest(rooms.findRoom(findStr), 343);
+
+		var batch = RoomBatch.validate(input.stream(), findStr);
+		io.printTest(batch.sectorIdSum, 1857L);
+		io.printTest(batch.matches, List.of(343));
+
+		// the whole checksum and the name are checked, also if the top letters already differ
+		io.printTest(isRejected("aaaaa-bbb-z-y-x-123[ab1de]") && isRejected("aaaaa-bbb-z-y-x-123[zb1de]")
+				&& isRejected("-123[abcde]") && isRejected("a-b-c-d-123[abcdE]"), true);
+
+		// the batch has to agree with the Rooms on the puzzle input
+		var lines = io.streamLines().toList();
+		batch = RoomBatch.validate(lines.stream(), "northpole object storage");
+		var decoys = lines.stream().filter(i -> Room.create(i).isDecoy()).count();
+		io.printTest(batch.realRooms, lines.size() - (int) decoys);
+		io.printTest(batch.sectorIdSum, 278221L);
+		io.printTest(batch.matches, List.of(267));
+
+		// every real room has to be found by its decrypted name
+		var inputRooms = new RoomList(lines);
+		long found = 0;
+		for (var room : inputRooms.rooms) {
+			found += inputRooms.findRoom(RoomList.decryptRoom(room));
+		}
+		io.printTest(found, (long) inputRooms.sumSectorIds());
+		io.printTest(inputRooms.findRoom("northpole object storage"), 267);
+	}
+
+	// the line has to be rejected like by Room.create
+	private static boolean isRejected(String line) {
+		try {
+			RoomBatch.checkRoom(line);
+			return false;
+		} catch (IllegalArgumentException e) {
+			return true;
+		}
 	}
 
 	@Override
 	public void solvePuzzle() {
 		final String findStr = "northpole object storage";
-		var rooms = new RoomList(io.readAllLines());
-		io.printResult(rooms.sumSectorIds(), 278221);
-		io.printResult(rooms.findRoom(findStr), 267);
+		var batch = RoomBatch.validate(io.streamLines(), findStr);
+		io.printResult(batch.sectorIdSum, 278221L);
+		io.printResult(batch.matches.getFirst(), 267);
 	}
 
 }
@@ -62,11 +62,16 @@
 
 package year2016;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import aoc.Day00;
 import aoc.MD5Generator;
+import aoc.MD5Generator.Backend;
+import aoc.MD5Search;
+import aoc.MD5Search.Match;
 
 
 
@@ -74,92 +79,78 @@ import aoc.MD5Generator;
 public class Day05 extends Day00 {
 	private static class DoorCode {
 		private static final int PASSWORD_LENGTH = 8;
+		private static final char PASSWORD_TOKEN = '*';
 
-		private MD5Generator hashGenerator;
-		private List<Integer> indexList = new LinkedList<>(); // To boost part 2
+		private final Iterator<Match> hashes;
+		private final List<Match> matches = new ArrayList<>(); // To boost part 2
 
 		DoorCode(String id) {
-			hashGenerator = new MD5Generator(id);
+			hashes = new MD5Search(new MD5Generator(id)).iterator(0, DoorCode::startsWithFiveZeros);
 		}
 
-		String findPasswordDoor1() {
-			class Door1 {
-				private static final char INVALID_CHAR_DOOR1 = '\0';
-
-				StringBuilder password = new StringBuilder(PASSWORD_LENGTH);
-				int index = 0;
-
-				private char checkChar() {
-					var buffer = hashGenerator.createHashByte(index);
-					if (buffer[0] == 0 && buffer[1] == 0 && (buffer[2] & 0xF0) == 0) {
-						return Integer.toHexString(buffer[2]).charAt(0);
-					}
-					return INVALID_CHAR_DOOR1;
-				}
+		private static boolean startsWithFiveZeros(byte[] hash) {
+			return hash[0] == 0 && hash[1] == 0 && (hash[2] & 0xF0) == 0;
+		}
+
+		// both doors use the same hashes, so remember the ones already found
+		private byte[] getMatch(int number) {
+			while (matches.size() <= number) {
+				matches.add(hashes.next());
+			}
+			return matches.get(number).hash();
+		}
 
-				private char getChar() {
-					for (;; ++index) {
-						var buffer = checkChar();
-						if (buffer == INVALID_CHAR_DOOR1) { continue; }
+		private static char toHexChar(int value) {
+			return Character.forDigit(value & 0x0F, 16);
+		}
 
-						indexList.add(index);
-						++index;
-						return buffer;
-					}
-				}
+		String findPasswordDoor1() {
+			var password = new StringBuilder(PASSWORD_LENGTH);
 
-				Door1() {
-					for (int i = 0; i < PASSWORD_LENGTH; ++i) {
-						password.append(getChar());
-					}
-				}
+			for (int i = 0; i < PASSWORD_LENGTH; ++i) {
+				password.append(toHexChar(getMatch(i)[2]));
 			}
 
-			return new Door1().password.toString();
+			return password.toString();
 		}
 
 		String findPasswordDoor2() {
-			class Door2 {
-				private static final byte[] INVALID_CHAR_DOOR2 = {};
-				private static final char PASSWORD_TOKEN = '*';
-
-				StringBuilder password = new StringBuilder(checkUsedIndices());
-				int index = indexList.getLast() + 1;
-
-				byte[] getChar(@SuppressWarnings("hiding") int index) {
-					var buffer = hashGenerator.createHashByte(index);
-					if (buffer[0] == 0 && buffer[1] == 0 && (buffer[2] & 0xF0) == 0) {
-						return new byte[]{buffer[2], (byte) ((buffer[3] & 0xF0) >> 4)};
-					}
-					return INVALID_CHAR_DOOR2;
+			var password = new StringBuilder(String.valueOf(PASSWORD_TOKEN).repeat(PASSWORD_LENGTH));
+
+			for (int i = 0; password.indexOf(String.valueOf(PASSWORD_TOKEN)) >= 0; ++i) {
+				var hash = getMatch(i);
+				var position = hash[2] & 0x0F;
+				if (position < PASSWORD_LENGTH && password.charAt(position) == PASSWORD_TOKEN) {
+					password.setCharAt(position, toHexChar(hash[3] >> 4));
 				}
+			}
 
-				private StringBuilder checkUsedIndices() {
-					var result = new StringBuilder(String.valueOf(PASSWORD_TOKEN).repeat(PASSWORD_LENGTH));
+			return password.toString();
+		}
+	}
 
-					for (var i : indexList) {
-						var buffer = getChar(i);
-						if (buffer != INVALID_CHAR_DOOR2 && buffer[0] < 8 && result.charAt(buffer[0]) == PASSWORD_TOKEN) {
-							result.setCharAt(buffer[0], Integer.toHexString(buffer[1]).charAt(0));
-						}
-					}
-					return result;
-				}
 
-				Door2() {
-					for (;; ++index) {
-						var buffer = getChar(index);
 
-						if (buffer != INVALID_CHAR_DOOR2 && buffer[0] < 8 && password.charAt(buffer[0]) == PASSWORD_TOKEN) {
-							password.setCharAt(buffer[0], Integer.toHexString(buffer[1]).charAt(0));
-							if (password.indexOf(String.valueOf(PASSWORD_TOKEN)) < 0) { break; }
-						}
-					}
-				}
-			}
+	// differential test: the MD5Kernel has to create the same hashes as MessageDigest
+	private static int countKernelErrors() {
+		final String SALT_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+		final int INDEX_COUNT = 10_000;
+		final int[] SPECIAL_INDICES = {Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 1_000_000_000};
+
+		int result = 0;
+		for (int saltLength = 0; saltLength <= SALT_CHARS.length(); ++saltLength) {
+			var salt = SALT_CHARS.substring(0, saltLength);
+			var expected = new MD5Generator(salt, Backend.MESSAGE_DIGEST).newHasher();
+			var kernel = new MD5Generator(salt, Backend.KERNEL).newHasher();
 
-			return new Door2().password.toString();
+			for (int i = 0; i < INDEX_COUNT; ++i) {
+				if (!Arrays.equals(expected.hash(i), kernel.hash(i))) { ++result; }
+			}
+			for (var i : SPECIAL_INDICES) {
+				if (!Arrays.equals(expected.hash(i), kernel.hash(i))) { ++result; }
+			}
 		}
+		return result;
 	}
 
 
@@ -174,6 +165,7 @@ public class Day05 extends Day00 {
 		var code = new DoorCode(DOOR_ID);
 		io.printTest(code.findPasswordDoor1(), "18f47a30");
 		io.printTest(code.findPasswordDoor2(), "05ace8e3");
+		io.printTest(countKernelErrors(), 0);
 	}
 
 	@Override
@@ -57,9 +57,12 @@
 
 package year2016;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
 
 import aoc.CharStatistic;
 import aoc.Day00;
@@ -69,41 +72,47 @@ import aoc.TwoResults;
 
 @SuppressWarnings("javadoc")
 public class Day06 extends Day00 {
-	private static record RepeatingMessage(List<String> messages) {
-		RepeatingMessage {
-			final int msgLength = messages.getFirst().length();
+	// statistic of each column, the messages are added row by row (or merged from parallel parts)
+	private static class ColumnStatistics {
+		private final List<CharStatistic> columns = new ArrayList<>();
 
-			for (var msg : messages) {
-				if (msg.length() != msgLength) {
-					throw new IllegalArgumentException("the size of the messages does not match");
-				}
-
-				if (!msg.matches("[a-z]+")) { throw new IllegalArgumentException("lower case characters expected"); }
+		private void createColumns(int count) {
+			for (int i = 0; i < count; ++i) {
+				columns.add(new CharStatistic());
 			}
 		}
 
-		private List<String> createColumns() {
-			var result = new LinkedList<String>();
+		void add(CharSequence msg) {
+			if (columns.isEmpty()) { createColumns(msg.length()); }
+			if (msg.length() != columns.size()) {
+				throw new IllegalArgumentException("the size of the messages does not match");
+			}
+
+			for (int i = 0; i < msg.length(); ++i) {
+				var chr = msg.charAt(i);
+				if (chr < 'a' || chr > 'z') { throw new IllegalArgumentException("lower case characters expected"); }
+				columns.get(i).add(chr);
+			}
+		}
 
-			for (int i = 0; i < messages.get(0).length(); ++i) {
-				var buffer = new StringBuilder(messages.size());
-				for (var j : messages) {
-					buffer.append(j.charAt(i));
-				}
-				result.add(buffer.toString());
+		void merge(ColumnStatistics other) {
+			if (other.columns.isEmpty()) { return; }
+			if (columns.isEmpty()) { createColumns(other.columns.size()); }
+			if (columns.size() != other.columns.size()) {
+				throw new IllegalArgumentException("the size of the messages does not match");
 			}
 
-			return result;
+			for (int i = 0; i < columns.size(); ++i) {
+				columns.get(i).merge(other.columns.get(i));
+			}
 		}
 
 		TwoResults<String> correctErrors() {
-			var msgColumn = createColumns();
-			var part1 = new StringBuilder(messages.size());
-			var part2 = new StringBuilder(messages.size());
-
-			msgColumn.forEach(str -> {
-				var stat = new CharStatistic(str);
+			if (columns.isEmpty()) { throw new IllegalArgumentException("no messages"); }
 
+			var part1 = new StringBuilder(columns.size());
+			var part2 = new StringBuilder(columns.size());
+			columns.forEach(stat -> {
 				part1.append(stat.getFirst().chr()); // most common letter
 				part2.append(stat.getLast().chr()); // least common letter
 			});
@@ -114,6 +123,20 @@ public class Day06 extends Day00 {
 
 
 
+	private static record RepeatingMessage(List<? extends CharSequence> messages) {
+		TwoResults<String> correctErrors() {
+			return correctErrors(messages.stream());
+		}
+
+		// the messages are consumed once, so huge inputs can be streamed without keeping them
+		static TwoResults<String> correctErrors(Stream<? extends CharSequence> messages) {
+			return messages.parallel().collect(ColumnStatistics::new, ColumnStatistics::add, ColumnStatistics::merge)
+					.correctErrors();
+		}
+	}
+
+
+
 	public Day06() {
 		super(2016, 6);
 	}
@@ -144,11 +167,36 @@ public class Day06 extends Day00 {
 		var msg = new RepeatingMessage(input).correctErrors();
 		io.printTest(msg.part1(), "easter");
 		io.printTest(msg.part2(), "advent");
+
+		var message = new RepeatingMessage(input); // can be used more than once
+		io.printTest(message.correctErrors(), message.correctErrors());
+
+		// the selection of the first and last elements has to match the sorted statistic, also for other characters
+		var random = new Random(6);
+		var selectionErrors = 0;
+		for (int i = 0; i < 1000; ++i) {
+			var str = new StringBuilder();
+			var alphabet = 1 + random.nextInt(40);
+			for (int j = random.nextInt(200); j > 0; --j) {
+				var chr = random.nextInt(alphabet);
+				str.append((char) (chr < 20 ? 'a' + chr : '\u03b1' + chr * 37));
+			}
+
+			var stat = new CharStatistic(str);
+			var list = stat.getList();
+			var k = Math.min(list.size(), random.nextInt(8));
+			if (!stat.top(k).equals(list.subList(0, k))) { ++selectionErrors; }
+			if (!stat.bottom(k).equals(list.subList(list.size() - k, list.size()))) { ++selectionErrors; }
+		}
+		io.printTest(selectionErrors, 0);
+
+		var merged = new CharStatistic("abc\u03b1").merge(new CharStatistic().add('c').addAll("d\u03b1\u03b1"));
+		io.printTest(merged.getList(), new CharStatistic("abcc\u03b1\u03b1\u03b1d").getList());
 	}
 
 	@Override
 	public void solvePuzzle() {
-		var msg = new RepeatingMessage(io.readAllLines()).correctErrors();
+		var msg = RepeatingMessage.correctErrors(io.streamLines());
 		io.printResult(msg.part1(), "xdkzukcf");
 		io.printResult(msg.part2(), "cevsgyvd");
 	}
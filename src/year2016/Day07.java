@@ -54,8 +54,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
 
 import aoc.Day00;
+import aoc.TwoResults;
 
 
 
@@ -146,6 +149,103 @@ public class Day07 extends Day00 {
 
 
 
+	/**
+	 * Classifies an address for TLS and SSL in a single pass over its characters, without splitting it into Strings. The
+	 * bracket depth decides, if a character belongs to a hypernet sequence. The last three characters are kept in
+	 * variables, the current run of letters tells if an ABBA or ABA window lies completely within one sequence. Found
+	 * ABAs (outside) and BABs (inside, stored as their ABA) are pairs of letters, they are recorded in 26x26 bitsets.
+	 */
+	private static class AddressScanner {
+		static final int TLS = 1;
+		static final int SSL = 2;
+
+		private static final int LETTER_COUNT = 'z' - 'a' + 1;
+		private static final int PAIR_WORDS = (LETTER_COUNT * LETTER_COUNT + Long.SIZE - 1) / Long.SIZE;
+
+		// records the pair (a, b) and returns true, if the other bitset contains it already
+		private static boolean addPair(long[] own, long[] other, char a, char b) {
+			var bit = (a - 'a') * LETTER_COUNT + (b - 'a');
+			own[bit / Long.SIZE] |= 1L << bit;
+			return (other[bit / Long.SIZE] & (1L << bit)) != 0;
+		}
+
+		private static IllegalArgumentException unexpected(CharSequence address) {
+			return new IllegalArgumentException("Unexpected value: " + address);
+		}
+
+		/**
+		 * classifies an address
+		 * 
+		 * @param address
+		 *          letters and (possibly nested) brackets
+		 * @return combination of the flags TLS and SSL
+		 */
+		static int classify(CharSequence address) {
+			var supernetABA = new long[PAIR_WORDS];
+			var hypernetABA = new long[PAIR_WORDS];
+			boolean abbaOutside = false;
+			boolean abbaInside = false;
+			boolean ssl = false;
+
+			int depth = 0;
+			int run = 0; // number of letters since the last bracket
+			char c1 = 0, c2 = 0, c3 = 0; // the previous three characters: c1 is the last one
+			for (int i = 0; i < address.length(); ++i) {
+				var c = address.charAt(i);
+				if (c == '[' || c == ']') {
+					depth += (c == '[') ? 1 : -1;
+					if (depth < 0) { throw unexpected(address); }
+					run = 0;
+					continue;
+				}
+				if (c < 'a' || c > 'z') { throw unexpected(address); }
+
+				++run;
+				if (run >= 3 && c == c2 && c != c1 && !ssl) {
+					if (depth == 0) {
+						ssl = addPair(supernetABA, hypernetABA, c, c1);
+					} else {
+						ssl = addPair(hypernetABA, supernetABA, c1, c); // BAB c1 c c1 belongs to ABA c c1 c
+					}
+				}
+				if (run >= 4 && c == c3 && c1 == c2 && c != c1) {
+					if (depth == 0) {
+						abbaOutside = true;
+					} else {
+						abbaInside = true;
+					}
+				}
+
+				c3 = c2;
+				c2 = c1;
+				c1 = c;
+			}
+			if (depth != 0) { throw unexpected(address); }
+
+			return ((abbaOutside && !abbaInside) ? TLS : 0) | (ssl ? SSL : 0);
+		}
+
+		/**
+		 * classifies the addresses in parallel
+		 * 
+		 * @param addresses
+		 *          one address per element
+		 * @return number of addresses supporting TLS (part 1) and SSL (part 2)
+		 */
+		static TwoResults<Long> count(Stream<? extends CharSequence> addresses) {
+			var result = addresses.parallel().mapToInt(AddressScanner::classify).collect(() -> new long[2], (sum, flags) -> {
+				if ((flags & TLS) != 0) { ++sum[0]; }
+				if ((flags & SSL) != 0) { ++sum[1]; }
+			}, (a, b) -> {
+				a[0] += b[0];
+				a[1] += b[1];
+			});
+			return new TwoResults<>(result[0], result[1]);
+		}
+	}
+
+
+
 	private static class AddressList {
 		private List<IpAddress> list;
 
@@ -216,13 +316,46 @@ public class Day07 extends Day00 {
 
 		tests = new AddressList(input2);
 		io.printTest(tests.countSSL(), 3L);
+
+		io.printTest(AddressScanner.count(input1.stream()), new TwoResults<>(2L, 0L));
+		io.printTest(AddressScanner.count(input2.stream()), new TwoResults<>(0L, 3L));
+
+		// the scanner has to classify random addresses like the split addresses
+		var random = new Random(7);
+		var differences = 0;
+		for (int i = 0; i < 10_000; ++i) {
+			var address = createRandomAddress(random);
+			var ip = IpAddress.create(address);
+			var expected = (ip.hasTLS() ? AddressScanner.TLS : 0) | (ip.hasSSL() ? AddressScanner.SSL : 0);
+			if (AddressScanner.classify(address) != expected) { ++differences; }
+		}
+		io.printTest(differences, 0);
+
+		// and the puzzle input
+		var addresses = new AddressList(io.readAllLines());
+		var expected = new TwoResults<>(addresses.countTLS(), addresses.countSSL());
+		io.printTest(AddressScanner.count(io.streamLines()), expected);
+	}
+
+	// few different letters, so ABBAs and ABAs are frequent
+	private static String createRandomAddress(Random random) {
+		var result = new StringBuilder();
+		var parts = 1 + 2 * random.nextInt(4);
+		for (int part = 0; part < parts; ++part) {
+			if (part > 0) { result.append((part % 2 == 1) ? '[' : ']'); }
+			var length = 1 + random.nextInt(8);
+			for (int i = 0; i < length; ++i) {
+				result.append((char) ('a' + random.nextInt(3)));
+			}
+		}
+		return result.toString();
 	}
 
 	@Override
 	public void solvePuzzle() {
-		var adresses = new AddressList(io.readAllLines());
-		io.printResult(adresses.countTLS(), 110L);
-		io.printResult(adresses.countSSL(), 242L);
+		var counts = AddressScanner.count(io.streamLines());
+		io.printResult(counts.part1(), 110L);
+		io.printResult(counts.part2(), 242L);
 	}
 
 }
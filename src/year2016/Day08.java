@@ -72,12 +72,16 @@ package year2016;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import aoc.Day00;
-import aoc.Grid;
+import aoc.BitGrid;
+import aoc.IntGrid;
+import aoc.Position;
+import aoc.Tokenizer;
 
 
 
@@ -90,36 +94,38 @@ public class Day08 extends Day00 {
 	}
 
 	private static record Instruction(Operation operation, int a, int b) {
-		private static Instruction createRect(String str) {
-			var buffer = str.split("x", 2);
-			return new Instruction(Operation.RECT, Integer.parseInt(buffer[0]), Integer.parseInt(buffer[1]));
-		}
-
-		private static Instruction createRotate(String str) {
-			var buffer = str.split(" ");
-			var op = switch (buffer[0]) {
-			case "row" -> Operation.ROTATE_ROW;
-			case "column" -> Operation.ROTATE_COLUMN;
-			default -> throw new IllegalArgumentException("Unexpected value: Rotate " + buffer[0]);
-			};
-
-			var a = Integer.parseInt(buffer[1].substring(2)); // ignore x= or y=
-			if (!buffer[2].equals("by")) { throw new IllegalArgumentException("Unexpected value: " + buffer[2]); }
-			var b = Integer.parseInt(buffer[3]);
+		// example: rect 3x2
+		private static Instruction createRect(Tokenizer tokens) {
+			var a = tokens.nextInt();
+			var b = tokens.skipPast((byte) 'x').nextInt();
+			return new Instruction(Operation.RECT, a, b);
+		}
+
+		// example: rotate row y=0 by 4
+		private static Instruction createRotate(Tokenizer tokens) {
+			Operation op;
+			if (tokens.skipIf("row")) {
+				op = Operation.ROTATE_ROW;
+			} else if (tokens.skipIf("column")) {
+				op = Operation.ROTATE_COLUMN;
+			} else {
+				throw new IllegalArgumentException("Unexpected value: Rotate " + tokens.nextToken());
+			}
+
+			var a = tokens.skipPast((byte) '=').nextInt(); // ignore x= or y=
+			var b = tokens.expect("by").nextInt();
 			return new Instruction(op, a, b);
 		}
 
-		static Instruction create(String str) {
-			var buffer = str.split(" ", 2);
-			return switch (buffer[0]) {
-			case "rect" -> createRect(buffer[1]);
-			case "rotate" -> createRotate(buffer[1]);
-			default -> throw new IllegalArgumentException("Unexpected value: " + buffer[0]);
-			};
+		static Instruction create(CharSequence str) {
+			var tokens = Tokenizer.of(str);
+			if (tokens.skipIf("rect")) { return createRect(tokens); }
+			if (tokens.skipIf("rotate")) { return createRotate(tokens); }
+			throw new IllegalArgumentException("Unexpected value: " + str);
 		}
 
-		static List<Instruction> createList(List<String> input) {
-			var buffer = new LinkedList<Instruction>();
+		static List<Instruction> createList(List<? extends CharSequence> input) {
+			var buffer = new ArrayList<Instruction>(input.size());
 			input.forEach(line -> buffer.add(Instruction.create(line)));
 			return Collections.unmodifiableList(buffer);
 		}
@@ -127,47 +133,144 @@ public class Day08 extends Day00 {
 
 
 
-	private static class Screen extends Grid<Boolean> {
-		private List<Instruction> instructions;
+	private static enum Mode {
+		/** every instruction changes the pixels immediately */
+		EAGER,
+		/** rotations only change an offset per row or column, the pixels are moved when needed */
+		LAZY;
+	}
+
+
+
+	/**
+	 * Pixels are kept in a BitGrid, so rect and row rotations work on whole long words. Long runs of column rotations
+	 * are performed on the transposed screen, where they are row rotations as well.
+	 *
+	 * In LAZY mode a rotation only adds to the offset of its row or column. The pixels are read through the offsets and
+	 * only moved, if rect covers a rotated line or the other axis is rotated (rotations of rows and columns do not
+	 * commute, so only one axis can be pending at a time).
+	 */
+	private static class Screen {
+		private final List<Instruction> instructions;
+		private final int width;
+		private final int height;
+		private final Mode mode;
+		private BitGrid pixels;
+		private boolean transposed = false;
 
-		Screen(int width, int height, List<String> input) {
-			super(width, height, false);
+		private final int[] rowOffsets;
+		private final int[] columnOffsets;
+		private final BitSet pendingRows = new BitSet();
+		private final BitSet pendingColumns = new BitSet();
+
+		Screen(int width, int height, List<? extends CharSequence> input, Mode mode) {
+			this.width = width;
+			this.height = height;
+			this.mode = mode;
+			pixels = new BitGrid(width, height);
+			rowOffsets = new int[height];
+			columnOffsets = new int[width];
 			instructions = Instruction.createList(input);
 		}
 
+		Screen(int width, int height, List<? extends CharSequence> input) {
+			this(width, height, input, Mode.EAGER);
+		}
+
+		// rotations do not change the number of pixels, so pending offsets can be ignored
 		int countPixel() {
-			return Collections.frequency(list(), true);
+			return (int) pixels.count();
 		}
 
-		private void rect(int a, int b) {
-			for (int i = 0; i < a; ++i) {
-				for (int j = 0; j < b; ++j) {
-					set(i, j, true);
+		boolean get(int x, int y) {
+			x = Math.floorMod(x - rowOffsets[y], width);
+			y = Math.floorMod(y - columnOffsets[x], height);
+			return transposed ? pixels.get(y, x) : pixels.get(x, y);
+		}
+
+		private long transposeCost() {
+			return ((width + 63L) / 64) * ((height + 63L) / 64) * 64 * 8;
+		}
+
+		// performs the pending row rotations of rows [from, to)
+		private void materialiseRows(int from, int to) {
+			for (int i = pendingRows.nextSetBit(from); i >= 0 && i < to; i = pendingRows.nextSetBit(i + 1)) {
+				pixels.rotateRow(i, rowOffsets[i]);
+				rowOffsets[i] = 0;
+			}
+			pendingRows.clear(from, to);
+		}
+
+		// performs the pending column rotations of columns [from, to), many of them on the transposed pixels
+		private void materialiseColumns(int from, int to) {
+			var columns = pendingColumns.get(from, to);
+			var crossCost = (long) height * columns.cardinality();
+			var target = (crossCost > transposeCost()) ? pixels.transpose() : pixels;
+
+			for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+				if (target == pixels) {
+					pixels.rotateColumn(from + i, columnOffsets[from + i]);
+				} else {
+					target.rotateRow(from + i, columnOffsets[from + i]);
 				}
+				columnOffsets[from + i] = 0;
 			}
+			if (target != pixels) { pixels = target.transpose(); }
+			pendingColumns.clear(from, to);
 		}
 
-		private void rotateRow(int row, int value) {
-			var width = size().x;
-			var result = new ArrayList<Boolean>(width);
-			for (int i = 0; i < width; ++i) {
-				result.add(get(i, row));
+		private void addOffset(int[] offsets, BitSet pending, int line, int value, int length) {
+			offsets[line] = Math.floorMod(offsets[line] + value, length);
+			pending.set(line, offsets[line] != 0);
+		}
+
+		// rows of '#' and '.', for tests
+		String pixelString() {
+			var result = new StringBuilder();
+			for (int y = 0; y < height; ++y) {
+				if (y != 0) { result.append('\n'); }
+				for (int x = 0; x < width; ++x) {
+					result.append(get(x, y) ? '#' : '.');
+				}
+			}
+			return result.toString();
+		}
+
+		private void transpose() {
+			pixels = pixels.transpose();
+			transposed = !transposed;
+		}
+
+		private void rect(int a, int b) {
+			if (!pendingRows.isEmpty()) { materialiseRows(0, b); }
+			if (!pendingColumns.isEmpty()) { materialiseColumns(0, a); }
+
+			if (transposed) {
+				pixels.fillRectangle(0, 0, b, a, true);
+			} else {
+				pixels.fillRectangle(0, 0, a, b, true);
 			}
-			Collections.rotate(result, value);
-			for (int i = 0; i < width; ++i) {
-				set(i, row, result.get(i));
+		}
+
+		private void rotateRow(int row, int value) {
+			if (mode == Mode.LAZY) {
+				if (!pendingColumns.isEmpty()) { materialiseColumns(0, width); }
+				addOffset(rowOffsets, pendingRows, row, value, width);
+			} else if (transposed) {
+				pixels.rotateColumn(row, value);
+			} else {
+				pixels.rotateRow(row, value);
 			}
 		}
 
 		private void rotateColumn(int column, int value) {
-			var height = size().y;
-			var result = new ArrayList<Boolean>(height);
-			for (int i = 0; i < height; ++i) {
-				result.add(get(column, i));
-			}
-			Collections.rotate(result, value);
-			for (int i = 0; i < height; ++i) {
-				set(column, i, result.get(i));
+			if (mode == Mode.LAZY) {
+				if (!pendingRows.isEmpty()) { materialiseRows(0, height); }
+				addOffset(columnOffsets, pendingColumns, column, value, height);
+			} else if (transposed) {
+				pixels.rotateRow(column, value);
+			} else {
+				pixels.rotateColumn(column, value);
 			}
 		}
 
@@ -187,8 +290,40 @@ public class Day08 extends Day00 {
 			}
 		}
 
+		private Operation crossRotation() {
+			return transposed ? Operation.ROTATE_ROW : Operation.ROTATE_COLUMN;
+		}
+
+		// index of the next rotation along the words (or the end of the instructions)
+		private int findCrossRunEnd(int from) {
+			var along = transposed ? Operation.ROTATE_COLUMN : Operation.ROTATE_ROW;
+			int result = from;
+			while (result < instructions.size() && instructions.get(result).operation != along) {
+				++result;
+			}
+			return result;
+		}
+
+		// Rotating across the words touches one word per line, transposing touches every word a few times. So the screen
+		// is only transposed before a run of rotations across the words, that costs more than the transposition.
+		private boolean isTransposeWorthwhile(int from, int to) {
+			var cross = crossRotation();
+			var count = instructions.subList(from, to).stream().filter(i -> i.operation == cross).count();
+
+			var crossCost = 2L * (transposed ? width : height) * count;
+			return crossCost > transposeCost();
+		}
+
 		public void performInstructions() {
-			instructions.forEach(i -> performInstruction(i));
+			var runEnd = 0;
+			for (int i = 0; i < instructions.size(); ++i) {
+				var instruction = instructions.get(i);
+				if (mode == Mode.EAGER && i >= runEnd && instruction.operation == crossRotation()) {
+					runEnd = findCrossRunEnd(i);
+					if (isTransposeWorthwhile(i, runEnd)) { transpose(); }
+				}
+				performInstruction(instruction);
+			}
 		}
 
 		@Override
@@ -202,13 +337,13 @@ public class Day08 extends Day00 {
 			}
 
 			var result = new StringBuilder();
-			var i = iterator();
 
-			for (int count = 0; i.hasNext(); ++count) {
-				if (count % size().x == 0 && count != 0) { result.append('\n'); }
-				if (count % C.LETTER_WIDTH == 0) { result.append(C.OFF_STRING); }
-
-				result.append(i.next() ? C.ON_STRING : C.OFF_STRING);
+			for (int y = 0; y < height; ++y) {
+				if (y != 0) { result.append('\n'); }
+				for (int x = 0; x < width; ++x) {
+					if (x % C.LETTER_WIDTH == 0) { result.append(C.OFF_STRING); }
+					result.append(get(x, y) ? C.ON_STRING : C.OFF_STRING);
+				}
 			}
 
 			if (C.COLORED_OUTPUT) { result.append(C.DEFAULT_COLOUR); }
@@ -216,6 +351,62 @@ public class Day08 extends Day00 {
 		}
 	}
 
+	// Random instructions, about every rectShare-th instruction is a rect with at most a quarter of the screen. The
+	// rotations come in runs of up to maxRun rotations of the same axis, only the first hotLines rows or columns are
+	// rotated.
+	private static List<String> createRandomInput(Random random, int width, int height, int count, int rectShare,
+			int maxRun, int hotLines) {
+		var result = new ArrayList<String>(count);
+		var rows = false;
+		var run = 0;
+		for (int i = 0; i < count; ++i) {
+			if (run == 0) {
+				rows = random.nextBoolean();
+				run = 1 + random.nextInt(maxRun);
+			}
+			--run;
+
+			if (random.nextInt(rectShare) == 0) {
+				result.add("rect " + (1 + random.nextInt((width + 1) / 2)) + "x" + (1 + random.nextInt((height + 1) / 2)));
+			} else if (rows) {
+				result.add("rotate row y=" + random.nextInt(Math.min(height, hotLines)) + " by " + random.nextInt(2 * width));
+			} else {
+				result.add("rotate column x=" + random.nextInt(Math.min(width, hotLines)) + " by "
+						+ random.nextInt(2 * height));
+			}
+		}
+		return result;
+	}
+
+	// performs the instructions and returns the time in ms
+	private static long measure(Screen screen) {
+		var start = System.nanoTime();
+		screen.performInstructions();
+		screen.countPixel();
+		return (System.nanoTime() - start) / 1_000_000;
+	}
+
+	/**
+	 * Benchmark of the screen modes, separate from the tests: rotate heavy instructions on a large screen, where the
+	 * same lines are rotated again and again. The lazy mode has to give the same pixels in less time.
+	 * 
+	 * @param args
+	 *          atm no meaning
+	 */
+	public static void main(String[] args) {
+		final int size = 2000;
+		final int count = 200_000;
+		var input = createRandomInput(new Random(8), size, size, count, 1000, 200, 50);
+
+		var eager = new Screen(size, size, input, Mode.EAGER);
+		var eagerTime = measure(eager);
+		var lazy = new Screen(size, size, input, Mode.LAZY);
+		var lazyTime = measure(lazy);
+
+		System.out.printf("%dx%d, %,d instructions: eager %,d ms | lazy %,d ms | same pixels: %b%n", size, size, count,
+				eagerTime, lazyTime, lazy.pixelString().equals(eager.pixelString()));
+	}
+
 	public Day08() {
 		super(2016, 8);
 	}
@@ -234,11 +425,74 @@ public class Day08 extends Day00 {
 		var screen = new Screen(7, 3, input);
 		screen.performInstructions();
 		io.printTest(screen.countPixel(), 6);
+		io.printTest(screen.pixelString(), ".#..#.#\n#.#....\n.#.....");
+
+		// a long run of column rotations is performed on the transposed screen (300 rotations by 1 change nothing)
+		var rotateHeavy = new ArrayList<>(input);
+		rotateHeavy.addAll(Collections.nCopies(300, "rotate column x=1 by 1"));
+		rotateHeavy.add("rotate row y=0 by 7");
+		rotateHeavy.add("rect 1x1");
+		screen = new Screen(7, 3, rotateHeavy);
+		screen.performInstructions();
+		io.printTest(screen.pixelString(), "##..#.#\n#.#....\n.#.....");
+
+		// lazy rotations have to give the same pixels as the eager ones
+		var random = new Random(8);
+		var lazyErrors = 0;
+		for (int i = 0; i < 200; ++i) {
+			var width = 1 + random.nextInt(i < 100 ? 10 : 150);
+			var height = 1 + random.nextInt(i < 100 ? 10 : 150);
+			var randomInput = createRandomInput(random, width, height, 100, 1 + random.nextInt(10), 1 + random.nextInt(20),
+					1 + random.nextInt(150));
+
+			var eager = new Screen(width, height, randomInput, Mode.EAGER);
+			eager.performInstructions();
+			var lazy = new Screen(width, height, randomInput, Mode.LAZY);
+			lazy.performInstructions();
+			if (eager.countPixel() != lazy.countPixel() || !eager.pixelString().equals(lazy.pixelString())) {
+				++lazyErrors;
+			}
+		}
+		io.printTest(lazyErrors, 0);
+
+		// the puzzle input in both modes
+		var puzzleInput = io.streamLines().toList();
+		var eager = new Screen(50, 6, puzzleInput, Mode.EAGER);
+		eager.performInstructions();
+		var lazy = new Screen(50, 6, puzzleInput, Mode.LAZY);
+		lazy.performInstructions();
+		io.printTest(lazy.pixelString().equals(eager.pixelString()), true);
+
+		// IntGrid has the same bulk operations: the sample screen with 1 for a lit pixel
+		var grid = new IntGrid(7, 3, 0);
+		grid.fillRectangle(0, 0, 3, 2, 1);
+		grid.rotateColumn(1, 1);
+		grid.rotateRow(0, 4);
+		grid.rotateColumn(1, -2); // the same as by 1
+		io.printTest(grid.count(1), 6L);
+		io.printTest(grid.toString(), "IntGrid 7x3:\n0,1,0,0,1,0,1\n1,0,1,0,0,0,0\n0,1,0,0,0,0,0");
+
+		io.printTest(grid.set(6, 2, 5), 0);
+		grid.swap(new Position(6, 2), new Position(0, 0));
+		io.printTest(grid.get(0, 0), 5);
+		io.printTest(grid.get(new Position(6, 2)), 0);
+		io.printTest(grid.size(), new Position(7, 3));
+		io.printTest(isRejected(0, 3) && isRejected(3, -1) && isRejected(1 << 16, 1 << 16), true);
+	}
+
+	// the size of an IntGrid has to be positive and its cells have to fit into an array
+	private static boolean isRejected(int width, int height) {
+		try {
+			new IntGrid(width, height, 0);
+			return false;
+		} catch (IllegalArgumentException | ArithmeticException e) {
+			return true;
+		}
 	}
 
 	@Override
 	public void solvePuzzle() {
-		var screen = new Screen(50, 6, io.readAllLines());
+		var screen = new Screen(50, 6, io.streamLines().toList(), Mode.LAZY);
 		screen.performInstructions();
 		io.printResult(screen.countPixel(), 128);
 		System.out.println("\t02 | expected: EOARGPHYAO");
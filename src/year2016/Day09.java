@@ -67,90 +67,497 @@
 
 package year2016;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 import aoc.Day00;
 
 
 
 @SuppressWarnings("javadoc")
 public class Day09 extends Day00 {
-	private record CompressionData(int start, long size) {
+	/**
+	 * Calculates the decompressed length in a single pass over the compressed bytes, which may be passed in any number of
+	 * parts. Nothing is copied, only the markers the current position is in are stored: a stack of the end offset and
+	 * the factor (product of all repetitions) of each repeated section. In version 1 markers inside a repeated section
+	 * are data. Whitespace is ignored.
+	 */
+	private static class LengthCalculator {
+		private static enum State {
+			DATA,
+			REPEATED_LENGTH,
+			TIMES_REPEATED;
+		}
+
+		private static final int BUFFER_SIZE = 1 << 20;
+
+		private final int version;
+		private State state = State.DATA;
+		private long position = 0;
+		private long length = 0;
+		private long repeatedLength;
+		private long timesRepeated;
+
+		private long[] ends = new long[16];
+		private long[] factors = new long[16];
+		private int depth = 0;
+		private long factor = 1;
+
+		LengthCalculator(int version) {
+			if (version != 1 && version != 2) { throw new IllegalArgumentException("Unexpected version: " + version); }
+			this.version = version;
+		}
+
+		private static boolean isWhitespace(byte b) {
+			return b == '\n' || b == '\r' || b == ' ' || b == '\t';
+		}
+
+		private static long appendDigit(long number, byte b) {
+			if (b < '0' || b > '9') { throw new IllegalArgumentException("Unexpected value in marker: " + (char) b); }
+			return Math.addExact(Math.multiplyExact(number, 10), b - '0');
+		}
+
+		private void push(long end, long newFactor) {
+			if (depth > 0 && end > ends[depth - 1]) {
+				throw new IllegalArgumentException("Marker exceeds the repeated section at " + position);
+			}
+			if (depth == ends.length) {
+				ends = Arrays.copyOf(ends, 2 * depth);
+				factors = Arrays.copyOf(factors, 2 * depth);
+			}
+			ends[depth] = end;
+			factors[depth] = newFactor;
+			++depth;
+			factor = newFactor;
+		}
+
+		// leaves all repeated sections, that end at the current position
+		private void pop() {
+			while (depth > 0 && ends[depth - 1] <= position) {
+				if (state != State.DATA) { throw new IllegalArgumentException("Marker exceeds the repeated section"); }
+				--depth;
+				factor = (depth > 0) ? factors[depth - 1] : 1;
+			}
+		}
+
+		private void update(byte b) {
+			if (isWhitespace(b)) { return; }
+			pop();
+
+			switch (state) {
+			case DATA :
+				if (b == '(' && (version == 2 || depth == 0)) {
+					state = State.REPEATED_LENGTH;
+					repeatedLength = 0;
+				} else {
+					length = Math.addExact(length, factor);
+				}
+				break;
+			case REPEATED_LENGTH :
+				if (b == 'x') {
+					state = State.TIMES_REPEATED;
+					timesRepeated = 0;
+				} else {
+					repeatedLength = appendDigit(repeatedLength, b);
+				}
+				break;
+			case TIMES_REPEATED :
+				if (b == ')') {
+					state = State.DATA;
+					push(position + 1 + repeatedLength, Math.multiplyExact(factor, timesRepeated));
+				} else {
+					timesRepeated = appendDigit(timesRepeated, b);
+				}
+				break;
+			default :
+				throw new IllegalArgumentException("Unexpected value: " + state);
+			}
+
+			++position;
+		}
+
+		// processes the next part of the compressed data
+		LengthCalculator update(byte[] bytes, int offset, int count) {
+			for (int i = offset; i < offset + count; ++i) {
+				update(bytes[i]);
+			}
+			return this;
+		}
+
+		LengthCalculator update(byte[] bytes) {
+			return update(bytes, 0, bytes.length);
+		}
+
+		LengthCalculator update(ByteBuffer buffer, int from, int to) {
+			for (int i = from; i < to; ++i) {
+				update(buffer.get(i));
+			}
+			return this;
+		}
+
+		// decompressed length of all processed data, that has to be complete
+		long length() {
+			pop();
+			if (state != State.DATA) { throw new IllegalArgumentException("Incomplete marker at the end"); }
+			if (depth > 0) { throw new IllegalArgumentException("Repeated section exceeds the end"); }
+			return length;
+		}
+
+		// reads the compressed data from a channel (until its end) and calculates the decompressed length
+		static long calculate(ReadableByteChannel channel, int version) throws IOException {
+			var calculator = new LengthCalculator(version);
+			var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (channel.read(buffer) >= 0) {
+				calculator.update(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+			return calculator.length();
+		}
 	}
 
-	private class CompressedFile {
-		private final String source;
 
-		CompressedFile(String input) {
-			source = input;
-			if (!source.matches("[A-Z\\(0-9x\\)]+")) { throw new IllegalArgumentException("Unexpected input value"); }
+
+	/**
+	 * Writes the decompressed data to a channel with bounded memory. The compressed data is read by position through a
+	 * small window, a repeated section is read again for each repetition. If the expansion of a section is small, it is
+	 * expanded once and then replayed from a buffer. The output is collected in a large direct buffer, so the
+	 * decompression is limited by the output channel. Whitespace is ignored like in {@link LengthCalculator}.
+	 */
+	private static class Decompressor {
+		@FunctionalInterface
+		private static interface PositionalReader {
+			// reads bytes from a position into dst, returns the number of bytes or -1 at the end (see FileChannel.read)
+			int read(ByteBuffer dst, long position) throws IOException;
 		}
 
-		private CompressionData decompressPart1(CompressionData d) {
-			var start = d.start;
-			var size = d.size;
+		private static final int WINDOW_SIZE = 1 << 16;
+		private static final int REPLAY_SIZE = 1 << 16;
+		private static final int OUTPUT_SIZE = 1 << 24;
+
+		private final PositionalReader source;
+		private final WritableByteChannel target;
+		private final int version;
+
+		private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE).limit(0);
+		private long windowStart = 0;
+		private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_SIZE);
+		private long written = 0;
+		private int flushCount = 0;
+		private long position = 0;
+		private long consumed = 0;
+		private byte[][] replayBuffers = new byte[0][];
+
+		private Decompressor(PositionalReader source, WritableByteChannel target, int version) {
+			if (version != 1 && version != 2) { throw new IllegalArgumentException("Unexpected version: " + version); }
+			this.source = source;
+			this.target = target;
+			this.version = version;
+		}
 
-			int posOpen = source.substring(start).indexOf('(');
-			if (posOpen < 0) { return new CompressionData(-1, size + source.length() - start); }
+		// byte at a position of the compressed data or -1 at the end
+		private int read(long at) throws IOException {
+			if (at < windowStart || at >= windowStart + window.limit()) {
+				window.clear();
+				windowStart = at;
+				while (window.hasRemaining() && source.read(window, at + window.position()) >= 0) {
+					// read until the window is full or the end is reached
+				}
+				window.flip();
+				if (!window.hasRemaining()) { return -1; }
+			}
+			return window.get((int) (at - windowStart)) & 0xFF;
+		}
 
-			size += posOpen;
-			posOpen += start + 1; // continue after '('
-			int posClose = source.substring(posOpen).indexOf(')') + posOpen;
-			var marker = source.substring(posOpen, posClose).split("x");
-			int repeatedLength = Integer.parseInt(marker[0]);
-			int timesRepeated = Integer.parseInt(marker[1]);
-			size += repeatedLength * timesRepeated;
+		private void flush() throws IOException {
+			output.flip();
+			while (output.hasRemaining()) {
+				target.write(output);
+			}
+			output.clear();
+			++flushCount;
+		}
 
-			return new CompressionData(posClose + repeatedLength + 1, size);
+		private void write(byte b) throws IOException {
+			if (!output.hasRemaining()) { flush(); }
+			output.put(b);
+			++written;
 		}
 
-		public long decompressPart1() {
-			for (var i = decompressPart1(new CompressionData(0, 0));; i = decompressPart1(i)) {
-				if (i.start < 0) { return i.size; }
+		private void write(byte[] bytes, int length) throws IOException {
+			for (int offset = 0; offset < length;) {
+				if (!output.hasRemaining()) { flush(); }
+				var count = Math.min(length - offset, output.remaining());
+				output.put(bytes, offset, count);
+				offset += count;
 			}
+			written += length;
 		}
 
-		private static long getDecompressedLength(String str) {
-			if (!str.contains("x")) { return str.length(); }
+		private byte[] getReplayBuffer(int depth) {
+			if (depth >= replayBuffers.length) { replayBuffers = Arrays.copyOf(replayBuffers, depth + 1); }
+			if (replayBuffers[depth] == null) { replayBuffers[depth] = new byte[REPLAY_SIZE]; }
+			return replayBuffers[depth];
+		}
 
-			var buffer = str.split("[\\(x\\)]", 4);
+		// next byte, that is not whitespace, or -1 at the end
+		private int next() throws IOException {
+			int b;
+			do {
+				b = read(position);
+				if (b < 0) { return b; }
+				++position;
+			} while (LengthCalculator.isWhitespace((byte) b));
+			++consumed;
+			return b;
+		}
 
-			int repeatedLength = Integer.parseInt(buffer[1]);
-			int timesRepeated = Integer.parseInt(buffer[2]);
-			var lengthBefore = buffer[0].length();
-			var decompressedLength = getDecompressedLength(buffer[3].substring(0, repeatedLength));
-			var lengthAfter = getDecompressedLength(buffer[3].substring(repeatedLength));
+		private long readNumber(char end) throws IOException {
+			long result = 0;
+			for (int b = next(); b != end; b = next()) {
+				if (b < 0) { throw new IllegalArgumentException("Incomplete marker at the end"); }
+				result = LengthCalculator.appendDigit(result, (byte) b);
+			}
+			return result;
+		}
 
-			var decomprLength = lengthBefore + decompressedLength * timesRepeated + lengthAfter;
+		private void skip(long count) throws IOException {
+			for (long i = 0; i < count; ++i) {
+				if (next() < 0) { throw new IllegalArgumentException("Repeated section exceeds the end"); }
+			}
+		}
 
-			return decomprLength;
+		// Decompresses count bytes (without whitespace) from the current position on. A negative count means until the
+		// end. Markers are only interpreted on the top level in version 1.
+		private void decompress(long count, int depth) throws IOException {
+			final var end = (count < 0) ? Long.MAX_VALUE : consumed + count;
+			while (consumed < end) {
+				var b = next();
+				if (b < 0) {
+					if (count >= 0) { throw new IllegalArgumentException("Repeated section exceeds the end"); }
+					return;
+				}
+
+				if (b != '(' || (version == 1 && depth > 0)) {
+					write((byte) b);
+					continue;
+				}
+
+				var repeatedLength = readNumber('x');
+				var timesRepeated = readNumber(')');
+				if (consumed > end || end - consumed < repeatedLength) {
+					throw new IllegalArgumentException("Marker exceeds the repeated section");
+				}
+				repeat(repeatedLength, timesRepeated, depth + 1);
+			}
 		}
 
-		private CompressionData decompressPart2(CompressionData d) {
-			var start = d.start;
-			var size = d.size;
+		private void repeat(long repeatedLength, long timesRepeated, int depth) throws IOException {
+			final var sectionStart = position;
+			final var consumedBefore = consumed;
+			if (timesRepeated == 0) {
+				skip(repeatedLength);
+				return;
+			}
 
-			int posOpen = source.substring(start).indexOf('(');
-			if (posOpen < 0) { return new CompressionData(-1, size + source.length() - start); }
+			var outputStart = output.position();
+			var writtenBefore = written;
+			var flushesBefore = flushCount;
+			decompress(repeatedLength, depth);
+			var expandedLength = written - writtenBefore;
+
+			if (expandedLength <= REPLAY_SIZE && flushCount == flushesBefore) {
+				var replay = getReplayBuffer(depth);
+				output.get(outputStart, replay, 0, (int) expandedLength);
+				for (long i = 1; i < timesRepeated; ++i) {
+					write(replay, (int) expandedLength);
+				}
+			} else {
+				var sectionEnd = position;
+				for (long i = 1; i < timesRepeated; ++i) {
+					position = sectionStart;
+					decompress(repeatedLength, depth);
+				}
+				position = sectionEnd;
+			}
+			consumed = consumedBefore + repeatedLength;
+		}
 
-			size += posOpen;
-			posOpen += start + 1; // continue after '('
-			int posClose = source.substring(posOpen).indexOf(')') + posOpen;
-			var marker = source.substring(posOpen, posClose).split("x");
-			int repeatedLength = Integer.parseInt(marker[0]);
-			int timesRepeated = Integer.parseInt(marker[1]);
-			size += getDecompressedLength(source.substring(posClose + 1, posClose + repeatedLength + 1)) * timesRepeated;
+		private long decompress() throws IOException {
+			decompress(-1, 0);
+			flush();
+			return written;
+		}
 
-			return new CompressionData(posClose + repeatedLength + 1, size);
+		// decompresses a file to a channel and returns the number of written bytes
+		static long decompress(FileChannel source, WritableByteChannel target, int version) throws IOException {
+			return new Decompressor(source::read, target, version).decompress();
 		}
 
-		public long decompressPart2() {
-			for (var i = decompressPart2(new CompressionData(0, 0));; i = decompressPart2(i)) {
-				if (i.start < 0) { return i.size; }
+		// decompresses bytes to a channel and returns the number of written bytes
+		static long decompress(byte[] source, WritableByteChannel target, int version) throws IOException {
+			var buffer = ByteBuffer.wrap(source);
+			return new Decompressor((dst, position) -> {
+				if (position >= source.length) { return -1; }
+				var count = (int) Math.min(dst.remaining(), source.length - position);
+				dst.put(buffer.slice((int) position, count));
+				return count;
+			}, target, version).decompress();
+		}
+	}
+
+
+
+	/**
+	 * Calculates the decompressed length on all cores. A pre-scan walks over the top level of the data, parses only the
+	 * markers there and jumps over their repeated sections. Each large section is a ForkJoin task, that does the same for
+	 * its content (version 2), until the sections are small enough for {@link LengthCalculator}. Whitespace is ignored
+	 * like there, it does not count for the length of a repeated section either.
+	 */
+	private static class ParallelLengthCalculator extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+		private static final int DEFAULT_THRESHOLD = 1 << 14;
+
+		private final transient ByteBuffer data; // tasks are never serialised
+		private final int from;
+		private final int to;
+		private final int version;
+		private final boolean topLevel;
+		private final int threshold;
+
+		private ParallelLengthCalculator(ByteBuffer data, int from, int to, int version, boolean topLevel, int threshold) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+			this.version = version;
+			this.topLevel = topLevel;
+			this.threshold = threshold;
+		}
+
+		private long readNumber(int[] position, char end) {
+			long result = 0;
+			for (;; ++position[0]) {
+				if (position[0] >= to) { throw new IllegalArgumentException("Marker exceeds the repeated section"); }
+				var b = data.get(position[0]);
+				if (b == end) { break; }
+				if (!LengthCalculator.isWhitespace(b)) { result = LengthCalculator.appendDigit(result, b); }
 			}
+			++position[0];
+			return result;
+		}
+
+		private long countData() {
+			long result = 0;
+			for (int i = from; i < to; ++i) {
+				if (!LengthCalculator.isWhitespace(data.get(i))) { ++result; }
+			}
+			return result;
+		}
+
+		// position after the next count bytes of data, whitespace between them is skipped
+		private int skipData(int start, long count) {
+			int position = start;
+			for (long found = 0; found < count; ++position) {
+				if (position >= to) { throw new IllegalArgumentException("Marker exceeds the section"); }
+				if (!LengthCalculator.isWhitespace(data.get(position))) { ++found; }
+			}
+			return position;
+		}
+
+		@Override
+		protected Long compute() {
+			if (!topLevel) {
+				if (version == 1) { return countData(); } // markers in a repeated section are data
+				if (to - from <= threshold) { return new LengthCalculator(2).update(data, from, to).length(); }
+			}
+
+			long length = 0;
+			var forked = new ArrayList<ParallelLengthCalculator>();
+			var factors = new ArrayList<Long>();
+
+			var position = new int[] { from };
+			while (position[0] < to) {
+				var b = data.get(position[0]++);
+				if (b != '(') {
+					if (!LengthCalculator.isWhitespace(b)) { ++length; }
+					continue;
+				}
+
+				var repeatedLength = readNumber(position, 'x');
+				var timesRepeated = readNumber(position, ')');
+				var sectionEnd = skipData(position[0], repeatedLength);
+				var section = new ParallelLengthCalculator(data, position[0], sectionEnd, version, false, threshold);
+				if (version == 2 && repeatedLength > threshold) {
+					section.fork();
+					forked.add(section);
+					factors.add(timesRepeated);
+				} else {
+					length = Math.addExact(length, Math.multiplyExact(section.compute(), timesRepeated));
+				}
+				position[0] = sectionEnd;
+			}
+
+			for (int i = 0; i < forked.size(); ++i) {
+				length = Math.addExact(length, Math.multiplyExact(forked.get(i).join(), factors.get(i)));
+			}
+			return length;
+		}
+
+		// decompressed length of all bytes of the buffer (up to its limit)
+		static long calculate(ByteBuffer data, int version, int threshold) {
+			if (version != 1 && version != 2) { throw new IllegalArgumentException("Unexpected version: " + version); }
+			return ForkJoinPool.commonPool().invoke(new ParallelLengthCalculator(data, 0, data.limit(), version, true,
+					threshold));
+		}
+
+		static long calculate(ByteBuffer data, int version) {
+			return calculate(data, version, DEFAULT_THRESHOLD);
 		}
 	}
 
 
 
+	private class CompressedFile {
+		private final byte[] source;
+
+		CompressedFile(String input) {
+			if (!input.matches("[A-Z\\(0-9x\\)]+")) { throw new IllegalArgumentException("Unexpected input value"); }
+			source = input.getBytes(StandardCharsets.ISO_8859_1);
+		}
+
+		public long decompressPart1() {
+			return new LengthCalculator(1).update(source).length();
+		}
+
+		public long decompressPart2() {
+			return new LengthCalculator(2).update(source).length();
+		}
+	}
+
+
+
+	private static String decompressToString(String compressed, int version) {
+		var result = new ByteArrayOutputStream();
+		try {
+			Decompressor.decompress(compressed.getBytes(StandardCharsets.ISO_8859_1), Channels.newChannel(result), version);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not decompress: " + compressed, e);
+		}
+		return result.toString(StandardCharsets.ISO_8859_1);
+	}
+
 	public Day09() {
 		super(2016, 9);
 	}
@@ -189,13 +596,68 @@ public class Day09 extends Day00 {
 
 		file = new CompressedFile("(25x3)(3x3)ABC(2x3)XY(5x2)PQRSTX(18x9)(3x2)TWO(5x7)SEVEN");
 		io.printTest(file.decompressPart2(), 445L);
+
+		// the data can be passed in parts, even in the middle of a marker
+		var calculator = new LengthCalculator(2);
+		for (var b : "(25x3)(3x3)ABC(2x3)XY(5x2)PQRSTX(18x9)(3x2)TWO(5x7)SEVEN\n".getBytes(StandardCharsets.ISO_8859_1)) {
+			calculator.update(new byte[] { b });
+		}
+		io.printTest(calculator.length(), 445L);
+
+
+
+		System.out.println();
+		io.printTest(decompressToString("X(8x2)(3x3)ABCY", 1), "X(3x3)ABC(3x3)ABCY");
+		io.printTest(decompressToString("X(8x2)(3x3)ABCY", 2), "XABCABCABCABCABCABCY");
+		io.printTest(decompressToString("(27x12)(20x12)(13x14)(7x10)(1x12)A", 2).equals("A".repeat(241920)), true);
+		io.printTest(decompressToString("(25x3)(3x3)ABC(2x3)XY(5x2)PQRSTX(18x9)(3x2)TWO(5x7)SEVEN", 2).length(), 445);
+
+		try (var channel = io.openChannel()) {
+			var discard = Channels.newChannel(OutputStream.nullOutputStream());
+			io.printTest(Decompressor.decompress(channel, discard, 1), 123908L);
+
+			// the parallel calculation has to match the sequential one, also if (nearly) every section is a task
+			var input = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			var sequential1 = new CompressedFile(io.readAllLines().getFirst()).decompressPart1();
+			var sequential2 = new CompressedFile(io.readAllLines().getFirst()).decompressPart2();
+			System.out.println();
+			io.printTest(ParallelLengthCalculator.calculate(input, 1), sequential1);
+			io.printTest(ParallelLengthCalculator.calculate(input, 2), sequential2);
+			io.printTest(ParallelLengthCalculator.calculate(input, 2, 16), sequential2);
+
+			var sample = "(25x3)(3x3)ABC(2x3)XY(5x2)PQRSTX(18x9)(3x2)TWO(5x7)SEVEN".getBytes(StandardCharsets.ISO_8859_1);
+			io.printTest(ParallelLengthCalculator.calculate(ByteBuffer.wrap(sample), 2, 1), 445L);
+
+			// whitespace (even in markers and repeated sections) is ignored like in the sequential calculation
+			var spaced = "X(8 x2)(3x3)A\nB C\r\nY (6x 2)A B\nCD E F\n".getBytes(StandardCharsets.ISO_8859_1);
+			for (var version : new int[] { 1, 2 }) {
+				var expected = new LengthCalculator(version).update(spaced).length();
+				io.printTest(ParallelLengthCalculator.calculate(ByteBuffer.wrap(spaced), version, 1), expected);
+			}
+			var wrapped = new ByteArrayOutputStream(); // the input with a line break after every 7 bytes
+			for (int i = 0; i < input.limit(); ++i) {
+				wrapped.write(input.get(i));
+				if (i % 7 == 6) { wrapped.write('\n'); }
+			}
+			var wrappedInput = ByteBuffer.wrap(wrapped.toByteArray());
+			io.printTest(ParallelLengthCalculator.calculate(wrappedInput, 1), sequential1);
+			io.printTest(ParallelLengthCalculator.calculate(wrappedInput, 2, 16), sequential2);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Could not read input");
+		}
 	}
 
 	@Override
 	protected void solvePuzzle() {
-		var file = new CompressedFile(io.readAllLines().getFirst());
-		io.printResult(file.decompressPart1(), 123908L);
-		io.printResult(file.decompressPart2(), 10755693147L);
+		try (var channel = io.openChannel()) {
+			io.printResult(LengthCalculator.calculate(channel, 1), 123908L);
+			channel.position(0);
+			io.printResult(LengthCalculator.calculate(channel, 2), 10755693147L);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Could not read input");
+		}
 	}
 
 }
@@ -56,9 +56,15 @@ package year2016;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 import aoc.Day00;
+import aoc.Tokenizer;
 
 
 
@@ -66,74 +72,47 @@ import aoc.Day00;
 public class Day10 extends Day00 {
 	static final int INVALID = -1;
 
-	private static class Chip {
-		int value = INVALID;
-		final int reciver;
-		final boolean toOutput;
-
-		Chip(boolean output, int reciver) {
-			this.reciver = reciver;
-			this.toOutput = output;
-		}
-
-		Chip(String output, String reciver) {
-			this(output.equals("output"), Integer.parseInt(reciver));
-		}
-	}
-
-	private static class Bot {
-		private Chip lowChip;
-		private Chip highChip;
-
-		Bot(Chip lowChipReciver, Chip highChipReciver) {
-			lowChip = new Chip(lowChipReciver.toOutput, lowChipReciver.reciver);
-			highChip = new Chip(highChipReciver.toOutput, highChipReciver.reciver);
-		}
-
-		boolean proceed() {
-			return lowChip.value > INVALID && highChip.value > INVALID;
-		}
-
-		void giveChip(int chipValue) {
-			if (proceed()) { throw new RuntimeException("Bot already has two chips"); }
-			if (chipValue <= INVALID) { throw new IllegalArgumentException("Unexpected value: " + chipValue); }
-
-			if (highChip.value > chipValue) {
-				lowChip.value = chipValue;
-			} else {
-				lowChip.value = highChip.value;
-				highChip.value = chipValue;
-			}
-		}
-
-		void removeChips() {
-			lowChip.value = INVALID;
-			highChip.value = INVALID;
-		}
-	}
-
 
 
+	/**
+	 * Event driven simulation: a bot, that gets its second chip, is pushed onto a ready stack and only those bots are
+	 * processed. The state is kept in int arrays indexed by the bot number, so millions of bots are simulated in linear
+	 * time. A receiver is encoded as bot number (>= 0) or as ~(output number) (< 0).
+	 */
 	private static class BotList {
 		private final int lowCompare;
 		private final int highCompare;
 
-		private int[] output = {INVALID, INVALID, INVALID};
+		private int[] lowReceiver = new int[0];
+		private int[] highReceiver = new int[0];
+		private int[] lowChip = new int[0];
+		private int[] highChip = new int[0];
+		private boolean[] hasRule = new boolean[0];
+		private int botCount = 0;
+
+		private int[] ready = new int[0];
+		private int readyCount = 0;
+
+		private int[] output = new int[0];
 		private int part1Number = INVALID;
-		private List<Bot> bots = new ArrayList<>();
 
-		BotList(List<String> input, int compare1, int compare2) {
-			input.sort((o1, o2) -> compareInput(o1, o2));
+		BotList(List<? extends CharSequence> input) {
+			this(input, INVALID, INVALID);
+		}
 
+		BotList(List<? extends CharSequence> input, int compare1, int compare2) {
+			var values = new ArrayList<Tokenizer>();
 			input.forEach(i -> {
-				if (i.startsWith("bot ")) {
-					addInstruction(i);
-				} else if (i.startsWith("value ")) {
-					addValue(i);
+				var tokens = Tokenizer.of(i);
+				if (tokens.skipIf("bot")) {
+					addInstruction(tokens);
+				} else if (tokens.skipIf("value")) {
+					values.add(tokens);
 				} else {
 					throw new IllegalArgumentException("Unexpected value: " + i);
 				}
 			});
+			values.forEach(this::addValue);
 
 			if (compare1 < compare2) {
 				lowCompare = compare1;
@@ -144,93 +123,261 @@ public class Day10 extends Day00 {
 			}
 		}
 
-		// sort: bot 1, bot 2, ..., value 1, ...
-		private static int compareInput(String c1, String c2) {
-			var buffer1 = c1.split(" ", 3);
-			var buffer2 = c2.split(" ", 3);
-			if (buffer1[0].equals(buffer2[0])) {
-				Integer i1 = Integer.parseInt(buffer1[1]);
-				Integer i2 = Integer.parseInt(buffer2[1]);
-				return i1.compareTo(i2);
-			}
-			return buffer1[0].compareTo(buffer2[0]);
+		private static boolean isOutput(int receiver) {
+			return receiver < 0;
 		}
 
-		private void addInstruction(String str) {
+		// example: output 1 (or bot 1)
+		private static int createReceiver(Tokenizer tokens) {
+			if (tokens.skipIf("output")) { return ~tokens.nextInt(); }
+			return tokens.expect("bot").nextInt();
+		}
+
+		private static int[] grow(int[] array, int minLength, int value) {
+			if (array.length >= minLength) { return array; }
+			var oldLength = array.length;
+			var result = Arrays.copyOf(array, Math.max(minLength, 2 * oldLength));
+			Arrays.fill(result, oldLength, result.length, value);
+			return result;
+		}
+
+		private void ensureBot(int botNr) {
+			if (botNr < 0) { throw new IllegalArgumentException("Unexpected value: " + botNr); }
+			if (botNr < botCount) { return; }
+
+			botCount = botNr + 1;
+			lowReceiver = grow(lowReceiver, botCount, INVALID);
+			highReceiver = grow(highReceiver, botCount, INVALID);
+			lowChip = grow(lowChip, botCount, INVALID);
+			highChip = grow(highChip, botCount, INVALID);
+			ready = grow(ready, botCount, INVALID);
+			if (hasRule.length < botCount) { hasRule = Arrays.copyOf(hasRule, lowChip.length); }
+		}
+
+		private void addInstruction(Tokenizer tokens) {
 			// example: bot 2 gives low to bot 1 and high to bot 0
-			var buffer = str.split(" ");
-			int botNr = Integer.parseInt(buffer[1]);
-			if (botNr != bots.size()) {
-				throw new IllegalArgumentException("Unexpected value: " + botNr + ". There is a bot missing");
-			}
-			var lowRecieve = new Chip(buffer[5], buffer[6]);
-			var highRecieve = new Chip(buffer[10], buffer[11]);
-			bots.add(new Bot(lowRecieve, highRecieve));
+			int botNr = tokens.nextInt();
+			var low = createReceiver(tokens.expect("gives").expect("low").expect("to"));
+			var high = createReceiver(tokens.expect("and").expect("high").expect("to"));
+
+			ensureBot(botNr);
+			if (hasRule[botNr]) { throw new IllegalArgumentException("Unexpected value: bot " + botNr + " has two rules"); }
+			hasRule[botNr] = true;
+			lowReceiver[botNr] = low;
+			highReceiver[botNr] = high;
+			if (!isOutput(low)) { ensureBot(low); }
+			if (!isOutput(high)) { ensureBot(high); }
 		}
 
-		private void addValue(String str) {
+		private void addValue(Tokenizer tokens) {
 			// example: value 5 goes to bot 2
-			var buffer = str.split(" ");
-			int botNr = Integer.parseInt(buffer[5]);
-			int chipValue = Integer.parseInt(buffer[1]);
-			bots.get(botNr).giveChip(chipValue);
+			int chipValue = tokens.nextInt();
+			int botNr = tokens.expect("goes").expect("to").expect("bot").nextInt();
+			ensureBot(botNr);
+			giveChip(botNr, chipValue);
 		}
 
-		private void setOutput(Chip c) {
-			int index = c.reciver;
-			if (index >= output.length) { return; }
-			output[index] = c.value;
-		}
+		private void giveChip(int botNr, int chipValue) {
+			if (highChip[botNr] != INVALID) { throw new IllegalStateException("Bot already has two chips"); }
+			if (chipValue <= INVALID) { throw new IllegalArgumentException("Unexpected value: " + chipValue); }
 
-		private void processBot(Bot bot) {
-			var lowBot = bots.get(bot.lowChip.reciver);
-			if (!bot.lowChip.toOutput) {
-				lowBot.giveChip(bot.lowChip.value);
-			} else {
-				setOutput(bot.lowChip);
+			if (lowChip[botNr] == INVALID) {
+				lowChip[botNr] = chipValue;
+				return;
 			}
 
-			var highBot = bots.get(bot.highChip.reciver);
-			if (!bot.highChip.toOutput) {
-				highBot.giveChip(bot.highChip.value);
+			if (lowChip[botNr] > chipValue) {
+				highChip[botNr] = lowChip[botNr];
+				lowChip[botNr] = chipValue;
 			} else {
-				setOutput(bot.highChip);
+				highChip[botNr] = chipValue;
 			}
+			ready[readyCount++] = botNr;
+		}
 
-			bot.removeChips();
+		private void setOutput(int outputNr, int chipValue) {
+			output = grow(output, outputNr + 1, INVALID);
+			output[outputNr] = chipValue;
 		}
 
-		private boolean hasNoOutput() {
-			for (var i : output) {
-				if (i == INVALID) { return true; }
+		private void give(int receiver, int chipValue) {
+			if (isOutput(receiver)) {
+				setOutput(~receiver, chipValue);
+			} else {
+				giveChip(receiver, chipValue);
 			}
-			return false;
+		}
+
+		private void processBot(int botNr) {
+			if (!hasRule[botNr]) { throw new IllegalStateException("Bot " + botNr + " has two chips, but no rule"); }
+
+			var low = lowChip[botNr];
+			var high = highChip[botNr];
+			if (part1Number == INVALID && low == lowCompare && high == highCompare) { part1Number = botNr; }
+
+			lowChip[botNr] = INVALID;
+			highChip[botNr] = INVALID;
+			give(lowReceiver[botNr], low);
+			give(highReceiver[botNr], high);
 		}
 
 		void process() {
-			while (part1Number == INVALID || hasNoOutput()) {
-				boolean changed = false;
+			while (readyCount > 0) {
+				processBot(ready[--readyCount]);
+			}
+		}
+
+		int getOutput() {
+			int result = 1;
+			for (int i = 0; i < 3; ++i) {
+				if (i >= output.length || output[i] == INVALID) {
+					throw new IllegalStateException("Output " + i + " is empty");
+				}
+				result *= output[i];
+			}
+			return result;
+		}
+	}
 
-				for (int i = 0; i < bots.size(); ++i) {// TODO check only the bots that received a chip
-					var bot = bots.get(i);
 
-					if (bot.proceed()) {
-						changed = true;
-						if (part1Number == INVALID && bot.lowChip.value == lowCompare && bot.highChip.value == highCompare) {
-							part1Number = i;
+
+	/**
+	 * The rules of a BotList as graph, that is built once: each bot, that gets exactly two chips, compares them once. The
+	 * bots are sorted topologically into layers, the bots of a layer only get chips from earlier layers and are
+	 * evaluated in parallel. Each incoming chip has its own slot, so no bots write to the same place. After the
+	 * evaluation any number of "which bot compares X and Y" queries are answered without simulating again.
+	 */
+	private static class BotNetwork {
+		private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+		private final BotList bots;
+		private final int[] receiverSlot; // for 2 * bot (+1 for high): slot of the receiving bot (0 or 1)
+		private final int[] order;
+		private final int[] layerStart;
+		private final int[] chips;
+		private final int[] output;
+		private final Map<Long, Integer> comparisons = new HashMap<>();
+
+		BotNetwork(BotList bots) {
+			this.bots = bots;
+			final int count = bots.botCount;
+			receiverSlot = new int[2 * count];
+			chips = new int[2 * count];
+
+			// the initial values are in the first slots, the chips of other bots fill the following slots
+			var filled = new int[count];
+			var incoming = new int[count];
+			var maxOutput = INVALID;
+			for (int i = 0; i < count; ++i) {
+				chips[2 * i] = bots.lowChip[i];
+				chips[2 * i + 1] = bots.highChip[i];
+				filled[i] = (bots.lowChip[i] != INVALID ? 1 : 0) + (bots.highChip[i] != INVALID ? 1 : 0);
+			}
+			var outputUsed = new BitSet();
+			for (int i = 0; i < count; ++i) {
+				if (!bots.hasRule[i]) { continue; }
+				for (int j = 0; j < 2; ++j) {
+					var receiver = (j == 0) ? bots.lowReceiver[i] : bots.highReceiver[i];
+					if (BotList.isOutput(receiver)) {
+						if (outputUsed.get(~receiver)) {
+							throw new IllegalArgumentException("Output " + ~receiver + " gets two chips");
 						}
-						processBot(bot);
+						outputUsed.set(~receiver);
+						maxOutput = Math.max(maxOutput, ~receiver);
+						continue;
+					}
+					if (filled[receiver] == 2) { throw new IllegalArgumentException("Bot " + receiver + " gets too many chips"); }
+					receiverSlot[2 * i + j] = filled[receiver]++;
+					++incoming[receiver];
+				}
+			}
+			output = new int[maxOutput + 1];
+			Arrays.fill(output, INVALID);
+
+			// Kahn's algorithm, layer by layer
+			order = new int[count];
+			var layers = new ArrayList<Integer>();
+			int size = 0;
+			for (int i = 0; i < count; ++i) {
+				if (incoming[i] == 0) { order[size++] = i; }
+			}
+			for (int start = 0; start < size;) {
+				layers.add(start);
+				var end = size;
+				for (int k = start; k < end; ++k) {
+					var bot = order[k];
+					if (!bots.hasRule[bot]) { continue; }
+					for (var receiver : new int[] { bots.lowReceiver[bot], bots.highReceiver[bot] }) {
+						if (!BotList.isOutput(receiver) && --incoming[receiver] == 0) { order[size++] = receiver; }
+					}
+				}
+				start = end;
+			}
+			if (size != count) { throw new IllegalArgumentException("The bots form a cycle"); }
+			layers.add(size);
+			layerStart = layers.stream().mapToInt(Integer::intValue).toArray();
+
+			evaluate();
+		}
+
+		private void deliver(int bot, int lowOrHigh, int receiver, int chipValue) {
+			if (BotList.isOutput(receiver)) {
+				output[~receiver] = chipValue;
+			} else {
+				chips[2 * receiver + receiverSlot[2 * bot + lowOrHigh]] = chipValue;
+			}
+		}
+
+		// a bot without two chips never compares, so its receivers miss these chips
+		private void fire(int bot) {
+			var a = chips[2 * bot];
+			var b = chips[2 * bot + 1];
+			if (a == INVALID || b == INVALID || !bots.hasRule[bot]) { return; }
+
+			deliver(bot, 0, bots.lowReceiver[bot], Math.min(a, b));
+			deliver(bot, 1, bots.highReceiver[bot], Math.max(a, b));
+		}
+
+		private static long key(int value1, int value2) {
+			return ((long) Math.min(value1, value2) << Integer.SIZE) | Math.max(value1, value2);
+		}
+
+		private void evaluate() {
+			for (int i = 0; i + 1 < layerStart.length; ++i) {
+				if (layerStart[i + 1] - layerStart[i] >= PARALLEL_THRESHOLD) {
+					IntStream.range(layerStart[i], layerStart[i + 1]).parallel().forEach(k -> fire(order[k]));
+				} else {
+					for (int k = layerStart[i]; k < layerStart[i + 1]; ++k) {
+						fire(order[k]);
 					}
 				}
+			}
 
-				if (!changed) { throw new RuntimeException("The loop is infinite"); }
+			for (int i = 0; i < order.length; ++i) {
+				if (chips[2 * i] != INVALID && chips[2 * i + 1] != INVALID && bots.hasRule[i]) {
+					comparisons.putIfAbsent(key(chips[2 * i], chips[2 * i + 1]), i);
+				}
 			}
 		}
 
+		/**
+		 * answers a batch of queries
+		 *
+		 * @param pairs
+		 *          pairs of chip values
+		 * @return number of the bot, that compares each pair, or INVALID
+		 */
+		int[] findComparingBots(int[][] pairs) {
+			return Arrays.stream(pairs).mapToInt(p -> comparisons.getOrDefault(key(p[0], p[1]), INVALID)).toArray();
+		}
+
 		int getOutput() {
 			int result = 1;
-			for (var i : output) {
-				result *= i;
+			for (int i = 0; i < 3; ++i) {
+				if (i >= output.length || output[i] == INVALID) {
+					throw new IllegalStateException("Output " + i + " is empty");
+				}
+				result *= output[i];
 			}
 			return result;
 		}
@@ -245,23 +392,81 @@ public class Day10 extends Day00 {
 	@Override
 	protected void testPuzzle() {
 		//@formatter:off
-		var bots = new BotList(Arrays.asList(
+		var sample = Arrays.asList(
 				"value 5 goes to bot 2",
 				"bot 2 gives low to bot 1 and high to bot 0",
 				"value 3 goes to bot 1",
 				"bot 1 gives low to output 1 and high to bot 0",
 				"bot 0 gives low to output 2 and high to output 0",
 				"value 2 goes to bot 2"
-		 ), 5 , 2);
+		);
 		//@formatter:on
+		var bots = new BotList(sample, 5, 2);
 		bots.process();
 		io.printTest(bots.part1Number, 2);
 		io.printTest(bots.getOutput(), 5 * 2 * 3);
+
+		var sampleNetwork = new BotNetwork(new BotList(sample));
+		var sampleAnswers = sampleNetwork.findComparingBots(new int[][] { { 5, 2 }, { 2, 3 }, { 3, 5 }, { 1, 2 } });
+		io.printTest(Arrays.toString(sampleAnswers), "[2, 1, 0, -1]");
+		io.printTest(sampleNetwork.getOutput(), 5 * 2 * 3);
+
+		// the batched queries of the network have to match a simulation for each pair
+		var input = io.readAllLines();
+		var network = new BotNetwork(new BotList(input));
+		var random = new Random(10);
+		var pairs = new int[100][];
+		for (int i = 0; i < pairs.length; ++i) {
+			pairs[i] = (i == 0) ? new int[] { 61, 17 } : new int[] { 1 + random.nextInt(80), 1 + random.nextInt(80) };
+		}
+		var answers = network.findComparingBots(pairs);
+		var errors = 0;
+		for (int i = 0; i < pairs.length; ++i) {
+			var simulation = new BotList(input, pairs[i][0], pairs[i][1]);
+			simulation.process();
+			if (simulation.part1Number != answers[i]) { ++errors; }
+		}
+		io.printTest(errors, 0);
+		io.printTest(answers[0], 147);
+		io.printTest(network.getOutput(), 55637);
+
+		// a long chain of bots: bot i compares i+1 and i+2, passes the low chip to output i
+		final int count = 10_000;
+		var chain = new ArrayList<String>(2 * count + 1);
+		for (int i = count - 1; i >= 0; --i) {
+			var high = (i == count - 1) ? "output " + count : "bot " + (i + 1);
+			chain.add("bot " + i + " gives low to output " + i + " and high to " + high);
+			chain.add("value " + (i + 2) + " goes to bot " + i);
+		}
+		chain.add("value 1 goes to bot 0");
+		bots = new BotList(chain, count / 2 + 1, count / 2 + 2);
+		bots.process();
+		io.printTest(bots.part1Number, count / 2);
+		io.printTest(bots.getOutput(), 1 * 2 * 3);
+		io.printTest(bots.output[count], count + 1);
+
+		var chainNetwork = new BotNetwork(new BotList(chain));
+		io.printTest(chainNetwork.findComparingBots(new int[][] { { count / 2 + 1, count / 2 + 2 } })[0], count / 2);
+		io.printTest(chainNetwork.getOutput(), 1 * 2 * 3);
+
+		// one wide layer, that is just large enough to be evaluated in parallel: bot i compares 2i+1 and 2i+2
+		final int wideCount = BotNetwork.PARALLEL_THRESHOLD + 1;
+		var wide = new ArrayList<String>(3 * wideCount);
+		for (int i = 0; i < wideCount; ++i) {
+			wide.add("bot " + i + " gives low to output " + 2 * i + " and high to output " + (2 * i + 1));
+			wide.add("value " + (2 * i + 1) + " goes to bot " + i);
+			wide.add("value " + (2 * i + 2) + " goes to bot " + i);
+		}
+		var wideNetwork = new BotNetwork(new BotList(wide));
+		var wideQueries = IntStream.range(0, wideCount).mapToObj(i -> new int[] { 2 * i + 2, 2 * i + 1 })
+				.toArray(int[][]::new);
+		io.printTest(Arrays.equals(wideNetwork.findComparingBots(wideQueries), IntStream.range(0, wideCount).toArray()),
+				true);
 	}
 
 	@Override
 	protected void solvePuzzle() {
-		var bots = new BotList(io.readAllLines(), 61, 17);
+		var bots = new BotList(io.streamLines().toList(), 61, 17);
 		bots.process();
 		io.printResult(bots.part1Number, 147);
 		io.printResult(bots.getOutput(), 55637);
@@ -57,11 +57,19 @@
 
 package year2016;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import aoc.Day00;
+import aoc.Tokenizer;
 
 
 
@@ -73,14 +81,13 @@ public class Day12 extends Day00 {
 		DEC,
 		JUMP_NOT_ZERO;
 
-		static Action fromString(String str) {
-			return switch (str) {
-			case "cpy" -> COPY;
-			case "inc" -> INC;
-			case "dec" -> DEC;
-			case "jnz" -> JUMP_NOT_ZERO;
-			default -> throw new IllegalArgumentException("Unexpected value: " + str);
-			};
+		// reads the action from the bytes, without creating a String
+		static Action next(Tokenizer tokens) {
+			if (tokens.skipIf("cpy")) { return COPY; }
+			if (tokens.skipIf("inc")) { return INC; }
+			if (tokens.skipIf("dec")) { return DEC; }
+			if (tokens.skipIf("jnz")) { return JUMP_NOT_ZERO; }
+			throw new IllegalArgumentException("Unexpected value: " + tokens.nextToken());
 		}
 	}
 
@@ -98,16 +105,16 @@ public class Day12 extends Day00 {
 			}
 		}
 
-		static Instruction create(String str) {
-			var buffer = str.split(" ");
-			var action = Action.fromString(buffer[0]);
-			var x = buffer[1];
-			var y = (action == Action.COPY || action == Action.JUMP_NOT_ZERO) ? buffer[2] : "";
+		static Instruction create(CharSequence str) {
+			var tokens = Tokenizer.of(str);
+			var action = Action.next(tokens);
+			var x = tokens.nextToken().toString(); // the operands are record fields
+			var y = (action == Action.COPY || action == Action.JUMP_NOT_ZERO) ? tokens.nextToken().toString() : "";
 			return new Instruction(action, x, y);
 		}
 
-		static List<Instruction> create(List<String> input) {
-			var result = new LinkedList<Instruction>();
+		static List<Instruction> create(List<? extends CharSequence> input) {
+			var result = new ArrayList<Instruction>(input.size());
 			input.forEach(str -> result.add(create(str)));
 			return result;
 		}
@@ -115,17 +122,79 @@ public class Day12 extends Day00 {
 
 
 
-	private static class Assembunny {
-		List<Integer> registers = Arrays.asList(0, 0, 0, 0);
-		List<Instruction> instructions;
+	private static interface Machine {
+		void run(int[] registers);
+	}
+
+
+
+	// execution statistics collected by Program.run(long[], Profile)
+	private static class Profile {
+		private final Program program;
+		private final long[] counts;
+		private long nanoseconds = 0;
+
+		Profile(Program program) {
+			this.program = program;
+			counts = new long[program.size()];
+		}
+
+		long steps() {
+			return Arrays.stream(counts).sum();
+		}
+
+		String report(int top) {
+			final var steps = steps();
+			final var seconds = nanoseconds / 1e9;
+
+			var result = new StringBuilder();
+			result.append(String.format("\tsteps: %,d | time: %.3f s | %,.0f steps/s%n", steps, seconds,
+					(seconds > 0) ? steps / seconds : 0.0));
+
+			IntStream.range(0, counts.length).boxed().sorted((i, j) -> Long.compare(counts[j], counts[i])).limit(top)
+					.filter(i -> counts[i] > 0).forEach(i -> result.append(String.format("\tpc %3d | %,15d | %5.1f%% | %s%n", i,
+							counts[i], 100.0 * counts[i] / steps, program.disassemble(i))));
+
+			return result.toString();
+		}
+	}
+
+
+
+	// flat int encoded program: opcode, x, y for each instruction. The operand kinds are part of the opcode.
+	private static class Program implements Machine {
+		static final int COPY_REGISTER = 0; // register[y] = register[x]
+		static final int COPY_NUMBER = 1; // register[y] = x
+		static final int INC = 2; // ++register[x]
+		static final int DEC = 3; // --register[x]
+		static final int JUMP_NOT_ZERO = 4; // if (register[x] != 0) pc += y
+		static final int JUMP_NOT_ZERO_REGISTER = 5; // if (register[x] != 0) pc += register[y]
+		static final int JUMP = 6; // pc += y
+		static final int JUMP_REGISTER = 7; // pc += register[y]
+		static final int NO_OPERATION = 8;
+		// synthetic instructions, only created by optimize()
+		static final int ADD = 9; // register[y] += register[x]
+		static final int MUL = 10; // register[x] *= register[y]
+		static final int ZERO = 11; // register[x] = 0
+		static final int COPY_CONSTANT = 12; // register[y] = constants[x], for numbers beyond the int range
+
+		static final int WIDTH = 3;
+		static final int REGISTER_COUNT = 4;
+
+		private final int[] code;
+		private final long[] constants;
+
+		private Program(int[] code, long[] constants) {
+			this.code = code;
+			this.constants = constants;
+		}
 
-		Assembunny(List<String> input) {
-			instructions = Instruction.create(input);
+		int size() {
+			return code.length / WIDTH;
 		}
 
-		Assembunny(List<String> input, int c) {
-			this(input);
-			registers.set(registerNameToNumber("c"), c);
+		private static boolean isRegister(String operand) {
+			return operand.matches(Instruction.REGISTER);
 		}
 
 		private static int registerNameToNumber(String name) {
@@ -138,41 +207,767 @@ public class Day12 extends Day00 {
 			};
 		}
 
-		private int getRegisterOrNumber(String name) {
-			if (name.matches(Instruction.REGISTER)) { return registers.get(registerNameToNumber(name)); }
-			return Integer.parseInt(name);
+		private static long operand(String operand) {
+			return isRegister(operand) ? registerNameToNumber(operand) : Long.parseLong(operand);
+		}
+
+		private static int opcode(Instruction inst) {
+			return switch (inst.action()) {
+			case COPY -> isRegister(inst.x()) ? COPY_REGISTER : COPY_NUMBER;
+			case INC -> INC;
+			case DEC -> DEC;
+			case JUMP_NOT_ZERO -> {
+				if (isRegister(inst.x())) { yield isRegister(inst.y()) ? JUMP_NOT_ZERO_REGISTER : JUMP_NOT_ZERO; }
+				if (Long.parseLong(inst.x()) == 0) { yield NO_OPERATION; }
+				yield isRegister(inst.y()) ? JUMP_REGISTER : JUMP;
+			}
+			default -> throw new IllegalArgumentException("Unexpected value: " + inst.action());
+			};
+		}
+
+		static Program compile(List<Instruction> instructions) {
+			var code = new int[instructions.size() * WIDTH];
+			var constants = LongStream.builder();
+			int constantCount = 0;
+
+			int pc = 0;
+			for (var inst : instructions) {
+				var x = operand(inst.x());
+				var y = inst.y().isEmpty() ? 0 : operand(inst.y());
+				code[pc] = opcode(inst);
+				code[pc + 1] = (int) x; // the literal x of a jump is only needed by opcode()
+				code[pc + 2] = (int) y;
+
+				switch (code[pc]) {
+				case COPY_REGISTER -> registerNameToNumber(inst.y()); // has to be a register
+				case COPY_NUMBER -> {
+					registerNameToNumber(inst.y()); // has to be a register
+					if (code[pc + 1] != x) {
+						code[pc] = COPY_CONSTANT;
+						code[pc + 1] = constantCount++;
+						constants.add(x);
+					}
+				}
+				case INC, DEC -> registerNameToNumber(inst.x()); // has to be a register
+				case JUMP_NOT_ZERO, JUMP -> code[pc + 2] = clampOffset(y, instructions.size());
+				default -> {
+					// every operand is valid
+				}
+				}
+				pc += WIDTH;
+			}
+
+			return new Program(code, constants.build().toArray());
+		}
+
+		// every offset beyond the size of the program leaves it, so y * WIDTH can not overflow
+		private static int clampOffset(long offset, int size) {
+			return (int) Math.max(-size, Math.min(size, offset));
+		}
+
+		// a jump to a register offset: offsets, that leave the program, must not wrap around to an instruction
+		private int jump(int pc, long offset) {
+			return (offset < -size() || offset > size()) ? code.length : pc + (int) offset * WIDTH;
+		}
+
+		private static int opcode(int[] program, int index) {
+			return program[index * WIDTH];
+		}
+
+		private static int x(int[] program, int index) {
+			return program[index * WIDTH + 1];
+		}
+
+		private static int y(int[] program, int index) {
+			return program[index * WIDTH + 2];
+		}
+
+		private static void set(int[] program, int index, int opcode, int x, int y) {
+			program[index * WIDTH] = opcode;
+			program[index * WIDTH + 1] = x;
+			program[index * WIDTH + 2] = y;
+		}
+
+		private static boolean isJumpNotZero(int[] program, int index, int register, int offset) {
+			return opcode(program, index) == JUMP_NOT_ZERO && x(program, index) == register && y(program, index) == offset;
+		}
+
+		// a pattern may only be replaced, if no jump from outside lands inside of it (its first instruction is fine)
+		private boolean isReplaceable(int[] program, int start, int length) {
+			for (int i = 0; i < size(); ++i) {
+				if (i >= start && i < start + length) { continue; }
+
+				var op = opcode(program, i);
+				if (op != JUMP_NOT_ZERO && op != JUMP) { continue; }
+
+				var target = i + y(program, i);
+				if (target > start && target < start + length) { return false; }
+			}
+			return true;
+		}
+
+		// inc dst, dec count, jnz count -2 (or dec first) -> dst += count, count = 0
+		private boolean replaceAddition(int[] program, int i) {
+			final int LENGTH = 3;
+			if (i + LENGTH > size() || !isReplaceable(program, i, LENGTH)) { return false; }
+
+			int dst;
+			int count;
+			if (opcode(program, i) == INC && opcode(program, i + 1) == DEC) {
+				dst = x(program, i);
+				count = x(program, i + 1);
+			} else if (opcode(program, i) == DEC && opcode(program, i + 1) == INC) {
+				count = x(program, i);
+				dst = x(program, i + 1);
+			} else {
+				return false;
+			}
+			if (dst == count || !isJumpNotZero(program, i + 2, count, -2)) { return false; }
+
+			set(program, i, ADD, count, dst);
+			set(program, i + 1, ZERO, count, 0);
+			set(program, i + 2, NO_OPERATION, 0, 0);
+			return true;
+		}
+
+		// dec x, jnz x -1 (or inc) -> x = 0
+		private boolean replaceZero(int[] program, int i) {
+			final int LENGTH = 2;
+			if (i + LENGTH > size() || !isReplaceable(program, i, LENGTH)) { return false; }
+
+			var op = opcode(program, i);
+			var register = x(program, i);
+			if ((op != INC && op != DEC) || !isJumpNotZero(program, i + 1, register, -1)) { return false; }
+
+			set(program, i, ZERO, register, 0);
+			set(program, i + 1, NO_OPERATION, 0, 0);
+			return true;
+		}
+
+		// cpy src tmp, [dst += tmp, tmp = 0], dec count, jnz count -5 -> dst += src * count, tmp = 0, count = 0
+		private boolean replaceMultiplication(int[] program, int i) {
+			final int LENGTH = 6;
+			if (i + LENGTH > size() || !isReplaceable(program, i, LENGTH)) { return false; }
+
+			var copy = opcode(program, i);
+			if (copy != COPY_REGISTER && copy != COPY_NUMBER) { return false; }
+			var source = x(program, i);
+			var tmp = y(program, i);
+			if (opcode(program, i + 1) != ADD || x(program, i + 1) != tmp) { return false; }
+			var dst = y(program, i + 1);
+			if (opcode(program, i + 2) != ZERO || x(program, i + 2) != tmp) { return false; }
+			if (opcode(program, i + 3) != NO_OPERATION || opcode(program, i + 4) != DEC) { return false; }
+			var count = x(program, i + 4);
+			if (!isJumpNotZero(program, i + 5, count, -5)) { return false; }
+
+			if (dst == count || tmp == count) { return false; }
+			if (copy == COPY_REGISTER && (source == dst || source == tmp || source == count)) { return false; }
+
+			set(program, i + 1, MUL, tmp, count);
+			set(program, i + 2, ADD, tmp, dst);
+			set(program, i + 3, ZERO, tmp, 0);
+			set(program, i + 4, ZERO, count, 0);
+			set(program, i + 5, NO_OPERATION, 0, 0);
+			return true;
+		}
+
+		/**
+		 * Peephole optimisation: replaces the loop idioms for addition, multiplication and clearing a register with the
+		 * synthetic instructions ADD, MUL and ZERO. The replaced instructions become NO_OPERATION, so all jump offsets stay
+		 * valid. Because the registers wrap around, the results are equal to the loops, even for negative counters.
+		 * Programs with jumps to register offsets are not optimised, as their targets are unknown.
+		 */
+		Program optimize() {
+			var program = code.clone();
+
+			for (int i = 0; i < size(); ++i) {
+				var op = opcode(program, i);
+				if (op == JUMP_NOT_ZERO_REGISTER || op == JUMP_REGISTER) { return this; }
+			}
+
+			for (int i = 0; i < size(); ++i) {
+				if (!replaceAddition(program, i)) { replaceZero(program, i); }
+			}
+			for (int i = 0; i < size(); ++i) {
+				replaceMultiplication(program, i);
+			}
+
+			return new Program(program, constants);
+		}
+
+		/**
+		 * @return the program compiled to JVM bytecode, or the program itself if it can not be compiled
+		 */
+		Machine jit() {
+			return JitCompiler.compile(this);
+		}
+
+		String disassemble(int index) {
+			final int x = code[index * WIDTH + 1];
+			final int y = code[index * WIDTH + 2];
+
+			return switch (code[index * WIDTH]) {
+			case COPY_REGISTER -> "cpy " + (char) ('a' + x) + " " + (char) ('a' + y);
+			case COPY_NUMBER -> "cpy " + x + " " + (char) ('a' + y);
+			case COPY_CONSTANT -> "cpy " + constants[x] + " " + (char) ('a' + y);
+			case INC -> "inc " + (char) ('a' + x);
+			case DEC -> "dec " + (char) ('a' + x);
+			case JUMP_NOT_ZERO -> "jnz " + (char) ('a' + x) + " " + y;
+			case JUMP_NOT_ZERO_REGISTER -> "jnz " + (char) ('a' + x) + " " + (char) ('a' + y);
+			case JUMP -> "jmp " + y;
+			case JUMP_REGISTER -> "jmp " + (char) ('a' + y);
+			case NO_OPERATION -> "nop";
+			case ADD -> "add " + (char) ('a' + x) + " " + (char) ('a' + y);
+			case MUL -> "mul " + (char) ('a' + x) + " " + (char) ('a' + y);
+			case ZERO -> "zero " + (char) ('a' + x);
+			default -> throw new IllegalArgumentException("Unexpected value: " + code[index * WIDTH]);
+			};
+		}
+
+		/**
+		 * Runs the program with 64 bit registers, so large values do not overflow.
+		 * 
+		 * @param registers
+		 *          the registers
+		 * @param profile
+		 *          counts how often each instruction is executed, may be null
+		 */
+		void run(long[] registers, Profile profile) {
+			final int end = code.length;
+			final long[] counts = (profile == null) ? null : profile.counts;
+			final var start = System.nanoTime();
+
+			for (int pc = 0; pc >= 0 && pc < end;) {
+				final int x = code[pc + 1];
+				final int y = code[pc + 2];
+				if (counts != null) { ++counts[pc / WIDTH]; }
+
+				switch (code[pc]) {
+				case COPY_REGISTER :
+					registers[y] = registers[x];
+					break;
+				case COPY_NUMBER :
+					registers[y] = x;
+					break;
+				case COPY_CONSTANT :
+					registers[y] = constants[x];
+					break;
+				case INC :
+					++registers[x];
+					break;
+				case DEC :
+					--registers[x];
+					break;
+				case JUMP_NOT_ZERO :
+					if (registers[x] != 0) {
+						pc += y * WIDTH;
+						continue;
+					}
+					break;
+				case JUMP_NOT_ZERO_REGISTER :
+					if (registers[x] != 0) {
+						pc = jump(pc, registers[y]);
+						continue;
+					}
+					break;
+				case JUMP :
+					pc += y * WIDTH;
+					continue;
+				case JUMP_REGISTER :
+					pc = jump(pc, registers[y]);
+					continue;
+				case NO_OPERATION :
+					break;
+				case ADD :
+					registers[y] += registers[x];
+					break;
+				case MUL :
+					registers[x] *= registers[y];
+					break;
+				case ZERO :
+					registers[x] = 0;
+					break;
+				default :
+					throw new IllegalArgumentException("Unexpected value: " + code[pc]);
+				}
+
+				pc += WIDTH;
+			}
+
+			if (profile != null) { profile.nanoseconds += System.nanoTime() - start; }
+		}
+
+		@Override
+		public void run(int[] registers) {
+			final int end = code.length;
+
+			for (int pc = 0; pc >= 0 && pc < end;) {
+				final int x = code[pc + 1];
+				final int y = code[pc + 2];
+
+				switch (code[pc]) {
+				case COPY_REGISTER :
+					registers[y] = registers[x];
+					break;
+				case COPY_NUMBER :
+					registers[y] = x;
+					break;
+				case COPY_CONSTANT :
+					registers[y] = (int) constants[x];
+					break;
+				case INC :
+					++registers[x];
+					break;
+				case DEC :
+					--registers[x];
+					break;
+				case JUMP_NOT_ZERO :
+					if (registers[x] != 0) {
+						pc += y * WIDTH;
+						continue;
+					}
+					break;
+				case JUMP_NOT_ZERO_REGISTER :
+					if (registers[x] != 0) {
+						pc = jump(pc, registers[y]);
+						continue;
+					}
+					break;
+				case JUMP :
+					pc += y * WIDTH;
+					continue;
+				case JUMP_REGISTER :
+					pc = jump(pc, registers[y]);
+					continue;
+				case NO_OPERATION :
+					break;
+				case ADD :
+					registers[y] += registers[x];
+					break;
+				case MUL :
+					registers[x] *= registers[y];
+					break;
+				case ZERO :
+					registers[x] = 0;
+					break;
+				default :
+					throw new IllegalArgumentException("Unexpected value: " + code[pc]);
+				}
+
+				pc += WIDTH;
+			}
+		}
+	}
+
+
+
+	/**
+	 * Translates a Program into the static method run(int[]) of a hidden class. The registers are kept in local
+	 * variables and jumps become real branches, so HotSpot can optimise the guest program like any other Java code. The
+	 * class file is written by hand (version 49, so no stack map frames are needed). Programs with jumps to register
+	 * offsets have no static targets and are not compiled.
+	 */
+	private static class JitCompiler {
+		private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+		private static final int CLASS_FILE_VERSION = 49;
+		private static final int MAX_CODE_LENGTH = 0xFFFF;
+
+		private static final int ACC_PUBLIC = 0x0001;
+		private static final int ACC_STATIC = 0x0008;
+		private static final int ACC_FINAL = 0x0010;
+		private static final int ACC_SUPER = 0x0020;
+
+		private static final int CONSTANT_UTF8 = 1;
+		private static final int CONSTANT_INTEGER = 3;
+		private static final int CONSTANT_CLASS = 7;
+
+		private static final int NOP = 0x00;
+		private static final int ICONST_0 = 0x03;
+		private static final int BIPUSH = 0x10;
+		private static final int SIPUSH = 0x11;
+		private static final int LDC_W = 0x13;
+		private static final int ILOAD = 0x15;
+		private static final int ALOAD_0 = 0x2a;
+		private static final int IALOAD = 0x2e;
+		private static final int ISTORE = 0x36;
+		private static final int IASTORE = 0x4f;
+		private static final int IADD = 0x60;
+		private static final int IMUL = 0x68;
+		private static final int IINC = 0x84;
+		private static final int IFNE = 0x9a;
+		private static final int GOTO = 0xa7;
+		private static final int RETURN = 0xb1;
+
+		private static final String METHOD_NAME = "run";
+
+		private final int[] code;
+		private final long[] literals; // Program.constants
+		private final int size;
+		private final List<Object> constants = new ArrayList<>(); // String -> Utf8, Integer -> Integer
+		private final ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+		private int[] addresses; // bytecode address of each instruction, the last one is the end of the program
+
+		private JitCompiler(Program program) {
+			code = program.code;
+			literals = program.constants;
+			size = program.size();
+		}
+
+		static Machine compile(Program program) {
+			try {
+				var compiler = new JitCompiler(program);
+				if (!compiler.canCompile()) { return program; }
+
+				var lookup = MethodHandles.lookup().defineHiddenClass(compiler.createClassFile(), true);
+				var handle = lookup.findStatic(lookup.lookupClass(), METHOD_NAME,
+						MethodType.methodType(void.class, int[].class));
+
+				return registers -> {
+					try {
+						handle.invokeExact(registers);
+					} catch (Throwable e) {
+						throw new RuntimeException("compiled program failed", e);
+					}
+				};
+			} catch (IllegalAccessException | NoSuchMethodException | IOException | LinkageError e) {
+				e.printStackTrace();
+				return program;
+			}
+		}
+
+		private int opcode(int index) {
+			return code[index * Program.WIDTH];
+		}
+
+		private int x(int index) {
+			return code[index * Program.WIDTH + 1];
+		}
+
+		private int y(int index) {
+			return code[index * Program.WIDTH + 2];
+		}
+
+		private boolean canCompile() {
+			for (int i = 0; i < size; ++i) {
+				var op = opcode(i);
+				if (op == Program.JUMP_NOT_ZERO_REGISTER || op == Program.JUMP_REGISTER) { return false; }
+			}
+
+			calculateAddresses();
+			if (addresses[size] + epilogueLength() > MAX_CODE_LENGTH) { return false; }
+
+			// goto and ifne only have 16 bit offsets
+			for (int i = 0; i < size; ++i) {
+				var op = opcode(i);
+				if (op != Program.JUMP_NOT_ZERO && op != Program.JUMP) { continue; }
+
+				var branchAddress = addresses[i] + ((op == Program.JUMP_NOT_ZERO) ? 2 : 0); // after iload
+				var relative = branchOffset(i, y(i), branchAddress);
+				if (relative < Short.MIN_VALUE || relative > Short.MAX_VALUE) { return false; }
+			}
+			return true;
+		}
+
+		private int constant(Object value) {
+			var index = constants.indexOf(value);
+			if (index < 0) {
+				constants.add(value);
+				index = constants.size() - 1;
+			}
+			return index + 1; // the constant pool starts at 1
+		}
+
+		private static int numberLength(int value) {
+			if (value >= -1 && value <= 5) { return 1; }
+			if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) { return 2; }
+			return 3; // sipush or ldc_w
+		}
+
+		private int instructionLength(int index) {
+			return switch (opcode(index)) {
+			case Program.COPY_REGISTER -> 4;
+			case Program.COPY_NUMBER -> numberLength(x(index)) + 2;
+			case Program.COPY_CONSTANT -> numberLength((int) literals[x(index)]) + 2; // int registers wrap around
+			case Program.INC, Program.DEC -> 3;
+			case Program.JUMP_NOT_ZERO -> 5;
+			case Program.JUMP -> 3;
+			case Program.NO_OPERATION -> 1;
+			case Program.ADD, Program.MUL -> 7;
+			case Program.ZERO -> 3;
+			default -> throw new IllegalArgumentException("Unexpected value: " + opcode(index));
+			};
+		}
+
+		private static int prologueLength() {
+			return Program.REGISTER_COUNT * 5;
+		}
+
+		private static int epilogueLength() {
+			return Program.REGISTER_COUNT * 5 + 1;
+		}
+
+		private void calculateAddresses() {
+			addresses = new int[size + 1];
+			addresses[0] = prologueLength();
+			for (int i = 0; i < size; ++i) {
+				addresses[i + 1] = addresses[i] + instructionLength(i);
+			}
+		}
+
+		private static int local(int register) {
+			return register + 1; // local 0 is the register array
 		}
 
-		private int performInstruction(int index) {
-			var inst = instructions.get(index);
+		private void write(int... bytes) {
+			for (var i : bytes) {
+				bytecode.write(i);
+			}
+		}
+
+		private void writeShort(int value) {
+			write((value >> 8) & 0xFF, value & 0xFF);
+		}
+
+		private void writeNumber(int value) {
+			if (value >= -1 && value <= 5) {
+				write(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				write(BIPUSH, value & 0xFF);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				write(SIPUSH);
+				writeShort(value);
+			} else {
+				write(LDC_W);
+				writeShort(constant(value));
+			}
+		}
+
+		// jumps outside of the program end it
+		private int branchOffset(int index, int offset, int branchAddress) {
+			var target = index + offset;
+			var targetAddress = (target < 0 || target >= size) ? addresses[size] : addresses[target];
+			return targetAddress - branchAddress;
+		}
 
-			switch (inst.action) {
-			case COPY :
-				registers.set(registerNameToNumber(inst.y), getRegisterOrNumber(inst.x));
+		private void writeBranch(int opcode, int index, int offset) {
+			var relative = branchOffset(index, offset, bytecode.size());
+			if (relative < Short.MIN_VALUE || relative > Short.MAX_VALUE) { // prevented by canCompile()
+				throw new IllegalStateException("jump too far: " + relative);
+			}
+
+			write(opcode);
+			writeShort(relative);
+		}
+
+		private void writeInstruction(int index) {
+			var x = x(index);
+			var y = y(index);
+
+			switch (opcode(index)) {
+			case Program.COPY_REGISTER :
+				write(ILOAD, local(x), ISTORE, local(y));
+				break;
+			case Program.COPY_NUMBER :
+				writeNumber(x);
+				write(ISTORE, local(y));
+				break;
+			case Program.COPY_CONSTANT :
+				writeNumber((int) literals[x]);
+				write(ISTORE, local(y));
+				break;
+			case Program.INC :
+				write(IINC, local(x), 1);
 				break;
-			case DEC :
-				var registerDec = registerNameToNumber(inst.x);
-				registers.set(registerDec, registers.get(registerDec) - 1);
+			case Program.DEC :
+				write(IINC, local(x), 0xFF);
 				break;
-			case INC :
-				var registerInc = registerNameToNumber(inst.x);
-				registers.set(registerInc, registers.get(registerInc) + 1);
+			case Program.JUMP_NOT_ZERO :
+				write(ILOAD, local(x));
+				writeBranch(IFNE, index, y);
 				break;
-			case JUMP_NOT_ZERO :
-				if (getRegisterOrNumber(inst.x) != 0) { return index + Integer.parseInt(inst.y); }
+			case Program.JUMP :
+				writeBranch(GOTO, index, y);
+				break;
+			case Program.NO_OPERATION :
+				write(NOP);
+				break;
+			case Program.ADD :
+				write(ILOAD, local(y), ILOAD, local(x), IADD, ISTORE, local(y));
+				break;
+			case Program.MUL :
+				write(ILOAD, local(x), ILOAD, local(y), IMUL, ISTORE, local(x));
+				break;
+			case Program.ZERO :
+				write(ICONST_0, ISTORE, local(x));
 				break;
 			default :
-				throw new IllegalArgumentException("Unexpected value: " + inst.action);
+				throw new IllegalArgumentException("Unexpected value: " + opcode(index));
+			}
+		}
+
+		private byte[] createMethodCode() {
+			for (int i = 0; i < Program.REGISTER_COUNT; ++i) {
+				write(ALOAD_0, ICONST_0 + i, IALOAD, ISTORE, local(i));
 			}
 
-			return index + 1;
+			for (int i = 0; i < size; ++i) {
+				if (bytecode.size() != addresses[i]) { throw new IllegalStateException("wrong address of " + i); }
+				writeInstruction(i);
+			}
+
+			for (int i = 0; i < Program.REGISTER_COUNT; ++i) {
+				write(ALOAD_0, ICONST_0 + i, ILOAD, local(i), IASTORE);
+			}
+			write(RETURN);
+
+			return bytecode.toByteArray();
+		}
+
+		private byte[] createClassFile() throws IOException {
+			var methodCode = createMethodCode();
+
+			var className = constant(Day12.class.getPackageName().replace('.', '/') + "/AssembunnyProgram");
+			var thisClass = constant(new ClassReference(className));
+			var superClass = constant(new ClassReference(constant("java/lang/Object")));
+			var methodName = constant(METHOD_NAME);
+			var descriptor = constant("([I)V");
+			var codeAttribute = constant("Code");
+
+			var result = new ByteArrayOutputStream();
+			var out = new DataOutputStream(result);
+			out.writeInt(CLASS_FILE_MAGIC);
+			out.writeShort(0); // minor version
+			out.writeShort(CLASS_FILE_VERSION);
+
+			out.writeShort(constants.size() + 1);
+			for (var i : constants) {
+				if (i instanceof String str) {
+					out.writeByte(CONSTANT_UTF8);
+					out.writeUTF(str);
+				} else if (i instanceof Integer number) {
+					out.writeByte(CONSTANT_INTEGER);
+					out.writeInt(number);
+				} else if (i instanceof ClassReference reference) {
+					out.writeByte(CONSTANT_CLASS);
+					out.writeShort(reference.name());
+				}
+			}
+
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+
+			out.writeShort(1); // methods
+			out.writeShort(ACC_PUBLIC | ACC_STATIC);
+			out.writeShort(methodName);
+			out.writeShort(descriptor);
+			out.writeShort(1); // attributes of the method
+			out.writeShort(codeAttribute);
+			out.writeInt(2 + 2 + 4 + methodCode.length + 2 + 2);
+			out.writeShort(3); // max stack
+			out.writeShort(local(Program.REGISTER_COUNT)); // max locals
+			out.writeInt(methodCode.length);
+			out.write(methodCode);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes of the code
+
+			out.writeShort(0); // attributes of the class
+			out.flush();
+			return result.toByteArray();
+		}
+
+		private static record ClassReference(int name) {
+		}
+	}
+
+
+
+	private static enum Optimization {
+		NONE,
+		PEEPHOLE,
+		VERIFY; // runs the program with and without optimisation and compares the registers
+	}
+
+
+
+	private static enum Backend {
+		INTERPRETER,
+		JIT; // falls back to the interpreter, if the program can not be compiled
+	}
+
+
+
+	private static class Assembunny {
+		int[] registers = new int[Program.REGISTER_COUNT];
+		Program program;
+		Optimization optimization;
+		Backend backend;
+
+		Assembunny(List<? extends CharSequence> input, int c, Optimization optimization, Backend backend) {
+			program = Program.compile(Instruction.create(input));
+			registers[Program.registerNameToNumber("c")] = c;
+			this.optimization = optimization;
+			this.backend = backend;
+		}
+
+		Assembunny(List<? extends CharSequence> input, int c, Optimization optimization) {
+			this(input, c, optimization, Backend.INTERPRETER);
+		}
+
+		Assembunny(List<? extends CharSequence> input, int c) {
+			this(input, c, Optimization.PEEPHOLE);
+		}
+
+		Assembunny(List<? extends CharSequence> input) {
+			this(input, 0);
+		}
+
+		private Machine createMachine(Program p) {
+			return (backend == Backend.JIT) ? p.jit() : p;
 		}
 
 		int performInstructions() {
-			for (int i = 0; i < instructions.size(); i = performInstruction(i)) {
-				// do nothing, all done in line above
+			switch (optimization) {
+			case NONE :
+				createMachine(program).run(registers);
+				break;
+			case PEEPHOLE :
+				createMachine(program.optimize()).run(registers);
+				break;
+			case VERIFY :
+				var expected = registers.clone();
+				program.run(expected);
+				createMachine(program.optimize()).run(registers);
+				if (!Arrays.equals(expected, registers)) {
+					throw new RuntimeException("optimised program failed: " + Arrays.toString(registers) + " instead of "
+							+ Arrays.toString(expected));
+				}
+				break;
+			default :
+				throw new IllegalArgumentException("Unexpected value: " + optimization);
 			}
-			return registers.get(0);
+
+			return registers[0];
+		}
+
+		/**
+		 * Runs the (optimised) program in the interpreter with 64 bit registers. Optimisations are only exact as long as
+		 * the loop counters are positive, as the registers do not wrap around any more.
+		 * 
+		 * @param profile
+		 *          collects the statistics, may be null. Has to be created for the program used (see getProgram())
+		 * @return register a
+		 */
+		long performInstructions64(Profile profile) {
+			var wideRegisters = Arrays.stream(registers).asLongStream().toArray();
+			getProgram().run(wideRegisters, profile);
+			return wideRegisters[0];
+		}
+
+		Program getProgram() {
+			return (optimization == Optimization.NONE) ? program : program.optimize();
 		}
 	}
 
@@ -196,14 +991,91 @@ public class Day12 extends Day00 {
 		//@formatter:on
 		var instructions = new Assembunny(input);
 		io.printTest(instructions.performInstructions(), 42);
+
+		//@formatter:off
+		var multiply = Arrays.asList(
+				"cpy 7 b",
+				"cpy 3 d",
+				"cpy b c",
+				"inc a",
+				"dec c",
+				"jnz c -2",
+				"dec d",
+				"jnz d -5",
+				"dec b",
+				"jnz b -1"
+		);
+		//@formatter:on
+		instructions = new Assembunny(multiply, 0, Optimization.VERIFY);
+		io.printTest(instructions.performInstructions(), 21);
+
+		instructions = new Assembunny(io.readAllLines(), 1, Optimization.VERIFY);
+		io.printTest(instructions.performInstructions(), 9227663);
+
+		// offsets, that would overflow in offset * WIDTH, leave the program
+		instructions = new Assembunny(Arrays.asList("inc a", "jnz a 1431655765", "inc a"), 0, Optimization.NONE);
+		io.printTest(instructions.performInstructions(), 1);
+
+		instructions = new Assembunny(Arrays.asList("cpy 1431655765 b", "inc a", "jnz a b", "inc a"), 0,
+				Optimization.NONE);
+		io.printTest(instructions.performInstructions(), 1);
+
+		instructions = new Assembunny(input, 0, Optimization.NONE, Backend.JIT);
+		io.printTest(instructions.performInstructions(), 42);
+
+		instructions = new Assembunny(io.readAllLines(), 1, Optimization.NONE, Backend.JIT);
+		io.printTest(instructions.performInstructions(), 9227663);
+
+		instructions = new Assembunny(io.readAllLines(), 1, Optimization.VERIFY, Backend.JIT);
+		io.printTest(instructions.performInstructions(), 9227663);
+
+		// a jump over more than 32767 bytes of bytecode can not be compiled, the interpreter runs it
+		var farJump = new ArrayList<String>(List.of("inc a", "jnz a 8001"));
+		for (int i = 0; i < 8000; ++i) {
+			farJump.add("cpy 100000 b"); // 5 bytes each
+		}
+		farJump.add("inc a");
+		instructions = new Assembunny(farJump, 0, Optimization.NONE, Backend.JIT);
+		io.printTest(instructions.program.jit() instanceof Program, true);
+		io.printTest(instructions.performInstructions(), 2);
+
+		//@formatter:off
+		var overflow = Arrays.asList(
+				"cpy 100000 d",
+				"cpy 100000 c",
+				"inc a",
+				"dec c",
+				"jnz c -2",
+				"dec d",
+				"jnz d -5"
+		);
+		//@formatter:on
+		instructions = new Assembunny(overflow, 0);
+		io.printTest(instructions.performInstructions64(null), 10_000_000_000L);
+
+		instructions = new Assembunny(io.readAllLines(), 1, Optimization.NONE);
+		var profile = new Profile(instructions.getProgram());
+		io.printTest(instructions.performInstructions64(profile), 9227663L);
+		io.printTest(profile.steps(), 27_683_199L);
+		io.printTest(profile.counts[10], 9_227_464L);
+		io.printTest(profile.report(3).lines().count(), 4L); // summary and the top 3
+
+		// 64 bit literals and register offsets
+		instructions = new Assembunny(Arrays.asList("cpy 10000000000 a", "inc a"), 0);
+		io.printTest(instructions.performInstructions64(null), 10_000_000_001L);
+		io.printTest(instructions.performInstructions(), (int) 10_000_000_001L);
+
+		instructions = new Assembunny(Arrays.asList("cpy 4294967297 b", "jnz 1 b", "inc a"), 0);
+		io.printTest(instructions.performInstructions64(null), 0L);
 	}
 
 	@Override
 	protected void solvePuzzle() {
-		var instructions = new Assembunny(io.readAllLines());
+		var input = io.streamLines().toList();
+		var instructions = new Assembunny(input);
 		io.printTest(instructions.performInstructions(), 318009);
 
-		instructions = new Assembunny(io.readAllLines(), 1);
+		instructions = new Assembunny(input, 1);
 		io.printTest(instructions.performInstructions(), 9227663);
 	}
 
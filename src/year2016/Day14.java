@@ -6,19 +6,53 @@
 
 package year2016;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import aoc.Day00;
 import aoc.MD5Generator;
+import aoc.MD5Search;
+import aoc.MD5Search.Match;
+import aoc.MD5Search.Matches;
 
 
 
 @SuppressWarnings("javadoc")
 public class Day14 extends Day00 {
-	@SuppressWarnings("unused")
 	private static class MD5GeneratorStretch extends MD5Generator {
+		private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
 		private final int stretchCount;
 
+		// re-digests the lowercase hex digits of the hash, without creating Strings
+		private class StretchHasher extends Hasher {
+			private final byte[] hex = new byte[HASH_LENGTH * 2];
+
+			private void toHex(byte[] hash, int offset) {
+				for (int i = 0; i < HASH_LENGTH; ++i) {
+					var value = hash[offset + i];
+					hex[2 * i] = HEX_DIGITS[(value >> 4) & 0x0F];
+					hex[2 * i + 1] = HEX_DIGITS[value & 0x0F];
+				}
+			}
+
+			@Override
+			public void hash(int index, byte[] out, int offset) {
+				super.hash(index, out, offset);
+				for (int i = 0; i < stretchCount; ++i) {
+					toHex(out, offset);
+					md.update(hex);
+					digest(out, offset);
+				}
+			}
+		}
+
 		public MD5GeneratorStretch(String salt, int stretchCount) {
 			super(salt);
 			this.stretchCount = stretchCount;
@@ -26,85 +60,152 @@ public class Day14 extends Day00 {
 
 		@Override
 		public String createHashHex(int index) {
-			var buffer = super.createHashHex(index);
-			for (int i = 0; i < stretchCount; ++i) {
-				buffer = HexFormat.of().formatHex(createHash(buffer));
-			}
-			return buffer;
+			return HexFormat.of().formatHex(newHasher().hash(index));
+		}
+
+		@Override
+		public Hasher newHasher() {
+			return new StretchHasher();
 		}
 	}
 
 
 
 	private static class Keys {
-		private static final char INVALID_KEY = '\0';
+		private static final int INVALID_KEY = -1;
+		private static final int HEX_DIGITS = MD5Generator.HASH_LENGTH * 2;
+		private static final int LOOK_AHEAD = 1000;
+		private static final int QUEUE_CAPACITY = 1 << 12;
+
+		// properties of a hash, that has a triple (hashes without one are never a key and have no quintuple)
+		private static record Candidate(int index, int tripleDigit, int quintupleMask) {
+			static final Candidate END = new Candidate(Integer.MAX_VALUE, INVALID_KEY, 0);
+
+			static Candidate create(Match match) {
+				return new Candidate(match.index(), getTripleDigit(match.hash()), getQuintupleMask(match.hash()));
+			}
+		}
+
+		private final MD5Search search;
+
+		// filled by the producer thread, in index order
+		private final BlockingQueue<Candidate> produced = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		private boolean producerFinished = false;
+		private int lastProduced = -1;
 
-		private MD5Generator hashGenerator;
+		// candidates, that are produced, but not yet checked
+		private final Deque<Candidate> candidates = new ArrayDeque<>();
+		// sorted indices of the hashes with five times that digit in a row
+		private final List<Deque<Integer>> quintuples = new ArrayList<>();
 
 		Keys(MD5Generator generator) {
-			hashGenerator = generator;
+			search = new MD5Search(generator);
+			for (int i = 0; i < 16; ++i) {
+				quintuples.add(new ArrayDeque<>());
+			}
+		}
+
+		private static int getDigit(byte[] hash, int position) {
+			var value = hash[position / 2];
+			return ((position % 2 == 0) ? value >> 4 : value) & 0x0F;
 		}
 
-		private static char has3InARow(String hash) {
+		// returns the first digit, that appears 3 times in a row
+		private static int getTripleDigit(byte[] hash) {
 			final int SAME_CHARACTER_COUNT = 3;
-			if (hash.length() < SAME_CHARACTER_COUNT) { return INVALID_KEY; }
 
-			final var loopEnd = hash.length() - SAME_CHARACTER_COUNT;
-			for (int i = 0; i < loopEnd; ++i) {
-				char chr = hash.charAt(i);
-				if (chr == hash.charAt(i + 1) && chr == hash.charAt(i + 2)) { return chr; }
+			int count = 1;
+			for (int i = 1; i < HEX_DIGITS; ++i) {
+				count = (getDigit(hash, i) == getDigit(hash, i - 1)) ? count + 1 : 1;
+				if (count == SAME_CHARACTER_COUNT) { return getDigit(hash, i); }
 			}
 
 			return INVALID_KEY;
 		}
 
-		private static boolean has5InARow(String hash, char value) {
+		// returns a bit mask of all digits, that appear 5 times in a row
+		private static int getQuintupleMask(byte[] hash) {
 			final int SAME_CHARACTER_COUNT = 5;
-			if (hash.length() < SAME_CHARACTER_COUNT) { return false; }
-
-			final var loopEnd = hash.length() - SAME_CHARACTER_COUNT;
-			for (int i = 0; i < loopEnd; ++i) {
-				boolean found = true;
-				for (int j = 0; j < SAME_CHARACTER_COUNT; ++j) {
-					if (value != hash.charAt(i + j)) {
-						found = false;
-						break;
-					}
-				}
-				if (found) { return true; }
+
+			int result = 0;
+			int count = 1;
+			for (int i = 1; i < HEX_DIGITS; ++i) {
+				count = (getDigit(hash, i) == getDigit(hash, i - 1)) ? count + 1 : 1;
+				if (count == SAME_CHARACTER_COUNT) { result |= 1 << getDigit(hash, i); }
 			}
 
-			return false;
+			return result;
+		}
+
+		private Thread startProducer(Matches i) {
+			return Thread.ofVirtual().start(() -> {
+				try {
+					for (var match = i.poll(); match != null; match = i.poll()) {
+						produced.put(Candidate.create(match));
+					}
+					produced.put(Candidate.END);
+				} catch (InterruptedException e) {
+					// the keys are found, stop hashing
+				}
+			});
 		}
 
-		private boolean find5InARow(int startIndex, char tripleChar) {
-			var endLoop = startIndex + 1000;
+		private void consumeNext() {
+			Candidate candidate;
+			try {
+				candidate = produced.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while waiting for hashes");
+			}
 
-			for (int i = startIndex; i < endLoop; ++i) {
-				var hash = hashGenerator.createHashHex(i);
-				if (has5InARow(hash, tripleChar)) { return true; }
+			if (candidate == Candidate.END) {
+				producerFinished = true;
+				return;
 			}
 
-			return false;
+			lastProduced = candidate.index();
+			candidates.add(candidate);
+			for (int digit = 0; digit < quintuples.size(); ++digit) {
+				if ((candidate.quintupleMask() & (1 << digit)) != 0) { quintuples.get(digit).add(candidate.index()); }
+			}
 		}
 
-		private boolean isKey(int index) {
-			var hash = hashGenerator.createHashHex(index);
-			var tripleChar = has3InARow(hash);
-			if (tripleChar == INVALID_KEY) { return false; }
-			return find5InARow(index + 1, tripleChar);
+		private boolean isKey(Candidate candidate) {
+			var last = candidate.index() + LOOK_AHEAD;
+			while (lastProduced < last && !producerFinished) {
+				consumeNext();
+			}
+
+			// candidates are checked in index order, so older quintuples are not needed any more
+			var quintuple = quintuples.get(candidate.tripleDigit());
+			while (!quintuple.isEmpty() && quintuple.peek() <= candidate.index()) {
+				quintuple.poll();
+			}
+
+			return !quintuple.isEmpty() && quintuple.peek() <= last;
 		}
 
 		int generateKeys() {
 			final int KEYS_NEEDED = 64;
 
-			int index = 0;
-			for (int i = 1; i < KEYS_NEEDED; ++i, ++index) {
-				while (!isKey(index)) {
-					++index;
+			var matches = search.iterator(0, hash -> getTripleDigit(hash) != INVALID_KEY);
+			var producer = startProducer(matches);
+			try {
+				int keyCount = 0;
+				for (;;) {
+					while (candidates.isEmpty()) {
+						if (producerFinished) { throw new RuntimeException("not enough keys found"); }
+						consumeNext();
+					}
+
+					var candidate = candidates.poll();
+					if (isKey(candidate) && ++keyCount == KEYS_NEEDED) { return candidate.index(); }
 				}
+			} finally {
+				matches.close();
+				producer.interrupt();
 			}
-			return index - 1;
 		}
 	}
 
@@ -119,8 +220,8 @@ public class Day14 extends Day00 {
 		var keys = new Keys(new MD5Generator("abc"));
 		io.printTest(keys.generateKeys(), 22728);
 
-		// keys = new Keys(new MD5GeneratorStretch("abc", 2016));
-		// io.printTest(keys.generateKeys(), 22551);
+		keys = new Keys(new MD5GeneratorStretch("abc", 2016));
+		io.printTest(keys.generateKeys(), 22551);
 	}
 
 	@Override
@@ -129,8 +230,8 @@ public class Day14 extends Day00 {
 		Keys keys = new Keys(new MD5Generator(input));
 		io.printResult(keys.generateKeys(), 23890);
 
-		// keys = new Keys(new MD5GeneratorStretch(input, 2016));//TODO too slow
-		// io.printResult(keys.generateKeys(), 23890);
+		keys = new Keys(new MD5GeneratorStretch(input, 2016));
+		io.printResult(keys.generateKeys(), 22696);
 	}
 
 }